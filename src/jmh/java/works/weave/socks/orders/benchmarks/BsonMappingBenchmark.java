@@ -0,0 +1,214 @@
+package works.weave.socks.orders.benchmarks;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.DbRefProxyHandler;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.DbRefResolverCallback;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.ReferenceLookupDelegate;
+import org.springframework.data.mongodb.core.convert.ReferenceResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import works.weave.socks.orders.config.ReferenceLookupGuard;
+import works.weave.socks.orders.entities.Address;
+import works.weave.socks.orders.entities.Card;
+import works.weave.socks.orders.entities.Customer;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.entities.Shipment;
+import works.weave.socks.orders.values.OrderStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CustomerOrder to and from BSON through the MappingMongoConverter the repositories use
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BsonMappingBenchmark {
+    private MappingMongoConverter converter;
+
+    private CustomerOrder order;
+
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        converter = converter(guard());
+
+        // As fetched from the user service: the customer's address and card lists are not expanded
+        Customer customer = new Customer("57a98d98e4b00679b4a830af", "Eve", "Berger", "Eve_Berger",
+                Collections.emptyList(), Collections.emptyList());
+        order = order(customer);
+        document = write();
+    }
+
+    @Benchmark
+    public Document write() {
+        Document target = new Document();
+        converter.write(order, target);
+        return target;
+    }
+
+    @Benchmark
+    public CustomerOrder read() {
+        return converter.read(CustomerOrder.class, document);
+    }
+
+    /**
+     * Reads a customerIdPage of orders whose customer has addresses and cards, stored as
+     * <ul>
+     * <li>embedded: embedded snapshots, as orders are written now</li>
+     * <li>dbref-compat: DBRefs not yet migrated, read as id-only snapshots by the reference guard</li>
+     * <li>dbref-lookup: DBRefs resolved as the converter did before, one fetch per address and card list of every
+     * order. The fetches are answered from memory, so this is a lower bound: in production each was a query.</li>
+     * </ul>
+     */
+    @Benchmark
+    public List<CustomerOrder> readHistoryPage(HistoryPage page) {
+        List<CustomerOrder> orders = new ArrayList<>(page.documents.size());
+        for (Document stored : page.documents) {
+            orders.add(page.converter.read(CustomerOrder.class, stored));
+        }
+        return orders;
+    }
+
+    @State(Scope.Benchmark)
+    public static class HistoryPage {
+        @Param({"embedded", "dbref-compat", "dbref-lookup"})
+        public String layout;
+
+        @Param({"20"})
+        public int size;
+
+        private MappingMongoConverter converter;
+
+        private List<Document> documents;
+
+        @Setup
+        public void setUp() {
+            List<Address> addresses = Arrays.asList(
+                    new Address("57a98d98e4b00679b4a830ad", "246", "Whitelees Road", "Glasgow", "G67 3DL", "United Kingdom"),
+                    new Address("57a98d98e4b00679b4a830b0", "12", "Harbour Street", "Leith", "EH6 6QE", "United Kingdom"));
+            List<Card> cards = Arrays.asList(
+                    new Card("57a98d98e4b00679b4a830ae", "5953580604169678", "08/19", "678"),
+                    new Card("57a98d98e4b00679b4a830b1", "4485103617491342", "11/27", "142"));
+            Customer customer = new Customer("57a98d98e4b00679b4a830af", "Eve", "Berger", "Eve_Berger", addresses, cards);
+
+            MappingMongoConverter writer = converter(guard());
+            Map<Object, Document> referenced = new HashMap<>();
+            documents = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Document stored = new Document();
+                writer.write(order(customer), stored);
+                if (!layout.equals("embedded")) {
+                    Document storedCustomer = stored.get("customer", Document.class);
+                    storedCustomer.put("addresses", references("address", storedCustomer.getList("addresses", Document.class), referenced));
+                    storedCustomer.put("cards", references("card", storedCustomer.getList("cards", Document.class), referenced));
+                }
+                documents.add(stored);
+            }
+            converter = layout.equals("dbref-lookup") ? converter(new InMemoryDbRefResolver(referenced)) : writer;
+        }
+
+        private static List<DBRef> references(String collection, List<Document> embedded, Map<Object, Document> referenced) {
+            List<DBRef> references = new ArrayList<>(embedded.size());
+            for (Document document : embedded) {
+                referenced.put(document.get("_id"), document);
+                references.add(new DBRef(collection, document.get("_id")));
+            }
+            return references;
+        }
+    }
+
+    private static ReferenceLookupGuard guard() {
+        return new ReferenceLookupGuard(Set.of("address", "card"));
+    }
+
+    private static MappingMongoConverter converter(DbRefResolver resolver) {
+        MongoCustomConversions conversions = new MongoCustomConversions(Collections.emptyList());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(resolver, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private static CustomerOrder order(Customer customer) {
+        CustomerOrder order = new CustomerOrder(null, customer.getId(), customer,
+                new Address("57a98d98e4b00679b4a830ad", "246", "Whitelees Road", "Glasgow", "G67 3DL", "United Kingdom"),
+                new Card("57a98d98e4b00679b4a830ae", "5953580604169678", "08/19", "678"),
+                Arrays.asList(new Item("1", "03fef6ac-1896-4ce8-bd69-b798f85c6e0b", 2, 99.99F),
+                        new Item("2", "3395a43e-2d88-40de-b95f-e00e1502085b", 1, 18F),
+                        new Item("3", "510a0d7e-8e83-4193-b483-e27e09ddc34d", 4, 15F)),
+                new Shipment("57a98d98e4b00679b4a830af"), new Date(), 282.97F);
+        order.setStatus(OrderStatus.SHIPPED);
+        return order;
+    }
+
+    /**
+     * Serves referenced documents from a map, standing in for the queries DefaultDbRefResolver would run
+     */
+    private static class InMemoryDbRefResolver implements DbRefResolver {
+        private final Map<Object, Document> documents;
+
+        private InMemoryDbRefResolver(Map<Object, Document> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public Object resolveDbRef(MongoPersistentProperty property, DBRef dbref, DbRefResolverCallback callback,
+                                   DbRefProxyHandler proxyHandler) {
+            return callback.resolve(property);
+        }
+
+        @Override
+        public Document fetch(DBRef dbRef) {
+            return new Document(documents.get(dbRef.getId()));
+        }
+
+        @Override
+        public List<Document> bulkFetch(List<DBRef> dbRefs) {
+            List<Document> fetched = new ArrayList<>(dbRefs.size());
+            for (DBRef dbRef : dbRefs) {
+                fetched.add(fetch(dbRef));
+            }
+            return fetched;
+        }
+
+        @Override
+        public Object resolveReference(MongoPersistentProperty property, Object source,
+                                       ReferenceLookupDelegate referenceLookupDelegate,
+                                       ReferenceResolver.MongoEntityReader entityReader) {
+            return NoOpDbRefResolver.INSTANCE.resolveReference(property, source, referenceLookupDelegate, entityReader);
+        }
+    }
+}
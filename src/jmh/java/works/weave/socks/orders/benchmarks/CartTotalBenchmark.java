@@ -0,0 +1,83 @@
+package works.weave.socks.orders.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.services.CartItemsDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order total over carts of different sizes: the streamed decode that sums cents as it reads (what
+ * OrderPipelineService.calculateTotal adds shipping to) against the float sum over decoded items it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CartTotalBenchmark {
+    private static final long SHIPPING_CENTS = 499;
+
+    @Param({"1", "10", "100", "1000"})
+    private int cartSize;
+
+    private byte[] cartJson;
+
+    private List<Item> items;
+
+    private CartItemsDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("[");
+        items = new ArrayList<>(cartSize);
+        for (int i = 0; i < cartSize; i++) {
+            int quantity = 1 + i % 3;
+            float unitPrice = 9.99F + i % 50;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(i).append("\",\"itemId\":\"item-").append(i)
+                    .append("\",\"quantity\":").append(quantity).append(",\"unitPrice\":").append(unitPrice).append('}');
+            items.add(new Item(Integer.toString(i), "item-" + i, quantity, unitPrice));
+        }
+        cartJson = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+
+        decoder = new CartItemsDecoder(new JsonCodecRegistry(Jackson2ObjectMapperBuilder.json().build()));
+        ReflectionTestUtils.setField(decoder, "maxItems", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(decoder, "maxBytes", Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public float decodeAndTotalCents() throws IOException {
+        return Math.addExact(decoder.decode(new ByteArrayInputStream(cartJson)).getTotalCents(), SHIPPING_CENTS) / 100F;
+    }
+
+    @Benchmark
+    public float totalFloatSum() {
+        float total = 0F;
+        for (Item item : items) {
+            total += item.getQuantity() * item.getUnitPrice();
+        }
+        return total + 4.99F;
+    }
+}
@@ -0,0 +1,179 @@
+package works.weave.socks.orders.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.DefaultLinkRelationProvider;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+import works.weave.socks.orders.entities.Address;
+import works.weave.socks.orders.entities.Card;
+import works.weave.socks.orders.entities.Customer;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.entities.Shipment;
+import works.weave.socks.orders.values.PaymentRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding and encoding of the per-order payloads, the way the downstream clients did it before the codec registry
+ * (a reflective mapper resolving the type on every call) against the registry (Blackbird, cached readers and writers).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private static final ParameterizedTypeReference<EntityModel<Customer>> CUSTOMER =
+            new ParameterizedTypeReference<EntityModel<Customer>>() {
+            };
+
+    private static final ParameterizedTypeReference<EntityModel<Address>> ADDRESS =
+            new ParameterizedTypeReference<EntityModel<Address>>() {
+            };
+
+    private static final ParameterizedTypeReference<EntityModel<Card>> CARD =
+            new ParameterizedTypeReference<EntityModel<Card>>() {
+            };
+
+    private static final ParameterizedTypeReference<List<Item>> ITEMS =
+            new ParameterizedTypeReference<List<Item>>() {
+            };
+
+    private static final byte[] ADDRESS_HAL = ("{\"number\":\"246\",\"street\":\"Whitelees Road\",\"city\":\"Glasgow\","
+            + "\"postcode\":\"G67 3DL\",\"country\":\"United Kingdom\","
+            + "\"_links\":{\"self\":{\"href\":\"http://user/addresses/57a98d98e4b00679b4a830ad\"},"
+            + "\"address\":{\"href\":\"http://user/addresses/57a98d98e4b00679b4a830ad\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] CARD_HAL = ("{\"longNum\":\"5953580604169678\",\"expires\":\"08/19\",\"ccv\":\"678\","
+            + "\"_links\":{\"self\":{\"href\":\"http://user/cards/57a98d98e4b00679b4a830ae\"},"
+            + "\"card\":{\"href\":\"http://user/cards/57a98d98e4b00679b4a830ae\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] ITEMS_JSON = ("[{\"id\":\"1\",\"itemId\":\"03fef6ac-1896-4ce8-bd69-b798f85c6e0b\","
+            + "\"quantity\":2,\"unitPrice\":99.99},{\"id\":\"2\",\"itemId\":\"3395a43e-2d88-40de-b95f-e00e1502085b\","
+            + "\"quantity\":1,\"unitPrice\":18.0},{\"id\":\"3\",\"itemId\":\"510a0d7e-8e83-4193-b483-e27e09ddc34d\","
+            + "\"quantity\":4,\"unitPrice\":15.0}]")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] CUSTOMER_HAL = ("{\"firstName\":\"Eve\",\"lastName\":\"Berger\",\"username\":\"Eve_Berger\","
+            + "\"_links\":{\"self\":{\"href\":\"http://user/customers/57a98d98e4b00679b4a830af\"},"
+            + "\"customer\":{\"href\":\"http://user/customers/57a98d98e4b00679b4a830af\"},"
+            + "\"addresses\":{\"href\":\"http://user/customers/57a98d98e4b00679b4a830af/addresses\"},"
+            + "\"cards\":{\"href\":\"http://user/customers/57a98d98e4b00679b4a830af/cards\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private ObjectMapper plainHalMapper;
+
+    private ObjectMapper plainMapper;
+
+    private JsonCodecRegistry registry;
+
+    private CustomerOrder order;
+
+    private PaymentRequest payment;
+
+    @Setup
+    public void setUp() {
+        plainMapper = Jackson2ObjectMapperBuilder.json().build();
+        plainHalMapper = plainMapper.copy();
+        plainHalMapper.registerModule(new Jackson2HalModule());
+        plainHalMapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultLinkRelationProvider(), CurieProvider.NONE, MessageResolver.DEFAULTS_ONLY));
+        plainHalMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        registry = new JsonCodecRegistry(Jackson2ObjectMapperBuilder.json().modules(new BlackbirdModule()).build());
+        registry.warmUp();
+
+        Address address = new Address("1", "246", "Whitelees Road", "Glasgow", "G67 3DL", "United Kingdom");
+        Card card = new Card("1", "5953580604169678", "08/19", "678");
+        Customer customer = new Customer("57a98d98e4b00679b4a830af", "Eve", "Berger", "Eve_Berger",
+                Collections.singletonList(address), Collections.singletonList(card));
+        order = new CustomerOrder(null, customer.getId(), customer, address, card,
+                Arrays.asList(new Item("1", "03fef6ac-1896-4ce8-bd69-b798f85c6e0b", 2, 99.99F),
+                        new Item("2", "3395a43e-2d88-40de-b95f-e00e1502085b", 1, 18F)),
+                new Shipment("57a98d98e4b00679b4a830af"), new Date(), 222.97F);
+        payment = new PaymentRequest(address, card, customer, 222.97F);
+    }
+
+    @Benchmark
+    public Object decodeCustomerReflective() throws IOException {
+        JavaType type = plainHalMapper.getTypeFactory().constructType(CUSTOMER.getType());
+        return plainHalMapper.readValue(new ByteArrayInputStream(CUSTOMER_HAL), type);
+    }
+
+    @Benchmark
+    public Object decodeCustomerRegistry() throws IOException {
+        return registry.read(new ByteArrayInputStream(CUSTOMER_HAL), CUSTOMER, MediaTypes.HAL_JSON);
+    }
+
+    @Benchmark
+    public Object decodeAddressRegistry() throws IOException {
+        return registry.read(new ByteArrayInputStream(ADDRESS_HAL), ADDRESS, MediaTypes.HAL_JSON);
+    }
+
+    @Benchmark
+    public Object decodeCardRegistry() throws IOException {
+        return registry.read(new ByteArrayInputStream(CARD_HAL), CARD, MediaTypes.HAL_JSON);
+    }
+
+    @Benchmark
+    public Object decodeItemsReflective() throws IOException {
+        JavaType type = plainMapper.getTypeFactory().constructType(ITEMS.getType());
+        return plainMapper.readValue(new ByteArrayInputStream(ITEMS_JSON), type);
+    }
+
+    @Benchmark
+    public Object decodeItemsRegistry() throws IOException {
+        return registry.read(new ByteArrayInputStream(ITEMS_JSON), ITEMS, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] encodeOrderReflective() throws IOException {
+        return plainMapper.writeValueAsBytes(order);
+    }
+
+    @Benchmark
+    public byte[] encodeOrderRegistry() throws IOException {
+        return registry.write(order);
+    }
+
+    @Benchmark
+    public byte[] encodePaymentReflective() throws IOException {
+        return plainMapper.writeValueAsBytes(payment);
+    }
+
+    @Benchmark
+    public byte[] encodePaymentRegistry() throws IOException {
+        return registry.write(payment);
+    }
+}
@@ -0,0 +1,139 @@
+package works.weave.socks.orders.benchmarks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.config.AsyncConfiguration;
+import works.weave.socks.orders.config.OrdersConfigurationProperties;
+import works.weave.socks.orders.services.AsyncGetService;
+import works.weave.socks.orders.services.DownstreamClient;
+import works.weave.socks.orders.services.ResourceCache;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one asynchronous hop: a bare thread pool, the application task executor with the trace context
+ * and timing decorator, and a full AsyncGetService GET (guards, coalescing) over a client answering
+ * on that executor, which is how the @Async RestTemplate client behaves without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+    private static final URI CUSTOMER = URI.create("http://user/customers/57a98d98e4b00679b4a830af");
+
+    private static final ParameterizedTypeReference<String> TYPE = new ParameterizedTypeReference<String>() {
+    };
+
+    private ThreadPoolTaskExecutor plainExecutor;
+
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    private AsyncGetService asyncGetService;
+
+    @Setup
+    public void setUp() {
+        plainExecutor = new ThreadPoolTaskExecutor();
+        plainExecutor.setCorePoolSize(10);
+        plainExecutor.setMaxPoolSize(50);
+        plainExecutor.setQueueCapacity(100);
+        plainExecutor.initialize();
+
+        MeterRegistry registry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("meterRegistry", registry);
+        AsyncConfiguration asyncConfiguration = new AsyncConfiguration();
+        ReflectionTestUtils.setField(asyncConfiguration, "corePoolSize", 10);
+        ReflectionTestUtils.setField(asyncConfiguration, "maxPoolSize", 50);
+        ReflectionTestUtils.setField(asyncConfiguration, "queueCapacity", 100);
+        ReflectionTestUtils.setField(asyncConfiguration, "meterRegistry", beans.getBeanProvider(MeterRegistry.class));
+        taskExecutor = (ThreadPoolTaskExecutor) asyncConfiguration.getAsyncExecutor();
+
+        asyncGetService = new AsyncGetService(new ExecutorClient(taskExecutor), registry,
+                beans.getBeanProvider(ResourceCache.class),
+                new OrdersConfigurationProperties(), new StandardEnvironment());
+    }
+
+    @TearDown
+    public void tearDown() {
+        plainExecutor.shutdown();
+        taskExecutor.shutdown();
+    }
+
+    @Benchmark
+    public String plainExecutor() {
+        return CompletableFuture.supplyAsync(() -> "customer", plainExecutor).join();
+    }
+
+    @Benchmark
+    public String decoratedExecutor() {
+        return CompletableFuture.supplyAsync(() -> "customer", taskExecutor).join();
+    }
+
+    @Benchmark
+    public String asyncGetService() {
+        return asyncGetService.getResource(CUSTOMER, TYPE).join();
+    }
+
+    /**
+     * Answers every GET with a constant on the given executor
+     */
+    private static class ExecutorClient implements DownstreamClient {
+        private final Executor executor;
+
+        private ExecutorClient(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> CompletableFuture<T> getResource(URI url, ParameterizedTypeReference<T> type) {
+            return CompletableFuture.supplyAsync(() -> (T) "customer", executor);
+        }
+
+        @Override
+        public <T> CompletableFuture<ResponseEntity<T>> getResourceEntity(URI url, ParameterizedTypeReference<T> type,
+                                                                          String ifNoneMatch) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> CompletableFuture<T> getStreamed(URI url, MediaType accept, StreamDecoder<T> decoder) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
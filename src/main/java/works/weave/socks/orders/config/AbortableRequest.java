@@ -0,0 +1,80 @@
+package works.weave.socks.orders.config;
+
+import org.apache.hc.core5.concurrent.Cancellable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Handle for a blocking downstream call, so a caller that gave up can stop it on the thread running it.
+ * The pooled request factory attaches each HTTP request it creates to the handle of the current thread;
+ * abort() cancels that request, which closes its connection and fails a blocked read right away, and interrupts
+ * the thread, which ends a wait for a pooled connection or a JDK client exchange.
+ */
+public class AbortableRequest {
+    private static final ThreadLocal<AbortableRequest> CURRENT = new ThreadLocal<>();
+
+    // guarded by this
+    private Cancellable request;
+    private Thread thread;
+    private boolean aborted;
+    private boolean finished;
+
+    /**
+     * Attach a request about to be sent to the call running on this thread, if any
+     */
+    static void attach(Cancellable request) {
+        AbortableRequest current = CURRENT.get();
+        if (current != null) {
+            current.set(request);
+        }
+    }
+
+    /**
+     * Run the call on this thread; fails with CancellationException if it was aborted before it started
+     */
+    public <T> T run(Callable<T> call) throws Exception {
+        synchronized (this) {
+            if (aborted) {
+                throw new CancellationException("Call was abandoned before it started");
+            }
+            thread = Thread.currentThread();
+        }
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.remove();
+            synchronized (this) {
+                thread = null;
+                finished = true;
+                // An abort racing with the end of the call must not leave the pooled thread interrupted
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Stop the call if it has not finished yet; a no-op afterwards
+     */
+    public synchronized void abort() {
+        if (aborted || finished) {
+            return;
+        }
+        aborted = true;
+        if (request != null) {
+            request.cancel();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private synchronized void set(Cancellable request) {
+        if (aborted) {
+            request.cancel();
+        } else {
+            this.request = request;
+        }
+    }
+}
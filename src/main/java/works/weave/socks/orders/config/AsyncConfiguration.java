@@ -1,17 +1,28 @@
 package works.weave.socks.orders.config;
 
 import io.micrometer.context.ContextSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskDecorator;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configuration for async method execution with trace context propagation
@@ -21,6 +32,34 @@ import java.util.concurrent.Executor;
 public class AsyncConfiguration implements AsyncConfigurer {
     private static final Logger LOG = LoggerFactory.getLogger(AsyncConfiguration.class);
 
+    // Same switch Spring Boot uses to run Tomcat request handling on virtual threads
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${async.virtual.concurrency-limit:-1}")
+    private int virtualConcurrencyLimit;
+
+    @Value("${async.virtual.metrics-interval:10s}")
+    private Duration virtualMetricsInterval;
+
+    @Value("${async.core-pool-size:50}")
+    private int corePoolSize;
+
+    @Value("${async.max-pool-size:50}")
+    private int maxPoolSize;
+
+    @Value("${async.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${orders.submission.workers:20}")
+    private int submissionWorkers;
+
+    @Value("${orders.submission.queue-capacity:1000}")
+    private int submissionQueueCapacity;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
     /**
      * Configure async executor with trace context propagation
      * This ensures that trace IDs are passed to async methods
@@ -30,22 +69,77 @@ public class AsyncConfiguration implements AsyncConfigurer {
     public Executor getAsyncExecutor() {
         LOG.info("Configuring async executor with trace context propagation");
 
+        if (virtualThreads) {
+            if (Runtime.version().feature() >= 21) {
+                return virtualThreadExecutor();
+            }
+            LOG.warn("Virtual threads requested but running on Java {}; falling back to the platform thread pool",
+                    Runtime.version().feature());
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(10);
-        executor.setMaxPoolSize(50);
-        executor.setQueueCapacity(100);
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
         executor.setThreadNamePrefix("async-");
 
         // Add task decorator to propagate trace context
-        executor.setTaskDecorator(new TraceContextTaskDecorator());
+        executor.setTaskDecorator(new TraceContextTaskDecorator("taskExecutor", meterRegistry));
 
         executor.initialize();
 
-        LOG.info("Async executor configured: corePoolSize=10, maxPoolSize=50, queueCapacity=100");
+        LOG.info("Async executor configured: corePoolSize={}, maxPoolSize={}, queueCapacity={}",
+                corePoolSize, maxPoolSize, queueCapacity);
 
         return executor;
     }
 
+    /**
+     * One virtual thread per task, so calls blocked on downstream I/O do not hold a pool slot.
+     * There is no queue to overflow; an optional concurrency limit throttles submitters instead of rejecting.
+     */
+    private Executor virtualThreadExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("async-vt-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(virtualConcurrencyLimit);
+
+        // Add task decorator to propagate trace context
+        executor.setTaskDecorator(new TraceContextTaskDecorator("taskExecutor", meterRegistry));
+
+        LOG.info("Async executor configured: virtual threads, concurrencyLimit={}", virtualConcurrencyLimit);
+
+        return executor;
+    }
+
+    /**
+     * Bounded worker pool for orders accepted with 202; a full queue rejects new submissions
+     */
+    @Bean(name = "orderWorkerExecutor")
+    @ConditionalOnProperty(name = "orders.submission.async.enabled", havingValue = "true")
+    public Executor orderWorkerExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(submissionWorkers);
+        executor.setMaxPoolSize(submissionWorkers);
+        executor.setQueueCapacity(submissionQueueCapacity);
+        executor.setThreadNamePrefix("order-worker-");
+        executor.setTaskDecorator(new TraceContextTaskDecorator("orderWorkerExecutor", meterRegistry));
+        executor.initialize();
+
+        LOG.info("Order worker executor configured: workers={}, queueCapacity={}",
+                submissionWorkers, submissionQueueCapacity);
+
+        return executor;
+    }
+
+    /**
+     * Pinning and carrier utilization metrics, only useful when work actually runs on virtual threads
+     */
+    @Bean
+    @ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+    public VirtualThreadMetrics virtualThreadMetrics() {
+        return new VirtualThreadMetrics(virtualMetricsInterval);
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return (throwable, method, params) -> {
@@ -55,13 +149,63 @@ public class AsyncConfiguration implements AsyncConfigurer {
     }
 
     /**
-     * Task decorator that propagates trace context to async threads
+     * Task decorator that propagates trace context to async threads.
+     * It also times each task's wait in the executor queue separately from its execution, per ExecutorHop, so a
+     * saturated executor shows up as queue wait rather than as slow downstream calls, and the hop that waited is known.
      */
     private static class TraceContextTaskDecorator implements TaskDecorator {
         private static final Logger LOG = LoggerFactory.getLogger(TraceContextTaskDecorator.class);
 
+        private final LazyMeters<HopTimers> timers;
+
+        private static class Timers {
+            private final Timer queueWait;
+            private final Timer execution;
+
+            private Timers(String executor, String hop, MeterRegistry registry) {
+                queueWait = executorTimer("orders.async.queue.wait", "Time tasks wait before an executor thread runs them",
+                        executor, hop, registry);
+                execution = executorTimer("orders.async.execution", "Time executor threads spend running tasks",
+                        executor, hop, registry);
+            }
+        }
+
+        private static class HopTimers {
+            private final String executor;
+            private final MeterRegistry registry;
+            // hop -> timers, so recording does not go through the registry lookup
+            private final Map<String, Timers> timers = new ConcurrentHashMap<>();
+
+            private HopTimers(String executor, MeterRegistry registry) {
+                this.executor = executor;
+                this.registry = registry;
+            }
+
+            private Timers get(String hop) {
+                return timers.computeIfAbsent(hop, h -> new Timers(executor, h, registry));
+            }
+        }
+
+        TraceContextTaskDecorator(String executor, ObjectProvider<MeterRegistry> registry) {
+            this.timers = new LazyMeters<>(registry, r -> new HopTimers(executor, r));
+        }
+
+        private static Timer executorTimer(String name, String description, String executor, String hop,
+                                           MeterRegistry registry) {
+            return Timer.builder(name)
+                    .description(description)
+                    .tag("executor", executor)
+                    .tag("hop", hop)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(1_000))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(registry);
+        }
+
         @Override
         public Runnable decorate(Runnable runnable) {
+            long submitted = System.nanoTime();
+            String hop = ExecutorHop.current();
             // Capture the current trace context from the parent thread
             // Using the deprecated method but it's the most reliable for Spring Boot 3.4.x
             @SuppressWarnings("deprecation")
@@ -71,12 +215,17 @@ public class AsyncConfiguration implements AsyncConfigurer {
 
             // Return a wrapped runnable that restores the context in the async thread
             return () -> {
+                long started = System.nanoTime();
+                Timers timers = this.timers.get().get(hop);
+                timers.queueWait.record(started - submitted, TimeUnit.NANOSECONDS);
                 try (ContextSnapshot.Scope ignored = snapshot.setThreadLocals()) {
                     LOG.trace("Restored trace context in async thread");
                     runnable.run();
                 } catch (Exception e) {
                     LOG.error("Error in async task execution", e);
                     throw e;
+                } finally {
+                    timers.execution.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
                 }
             };
         }
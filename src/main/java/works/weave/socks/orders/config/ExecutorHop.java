@@ -0,0 +1,50 @@
+package works.weave.socks.orders.config;
+
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Names the order pipeline hop that tasks submitted by the current thread belong to, so the executors' queue wait
+ * and execution timers can be told apart per hop (address, customer, card, items, payment, shipment, save).
+ * The name is read when a task is submitted; tasks submitted outside a named hop are tagged "other".
+ */
+public final class ExecutorHop {
+    public static final String OTHER = "other";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ExecutorHop() {
+    }
+
+    /**
+     * Run submit with every task it hands to an executor tagged as hop
+     */
+    public static <T> T during(String hop, Supplier<T> submit) {
+        String previous = CURRENT.get();
+        CURRENT.set(hop);
+        try {
+            return submit.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * executor with every task submitted through it tagged as hop, for the async stages of a CompletableFuture chain
+     */
+    public static Executor tagging(String hop, Executor executor) {
+        return task -> during(hop, () -> {
+            executor.execute(task);
+            return null;
+        });
+    }
+
+    static String current() {
+        String hop = CURRENT.get();
+        return hop != null ? hop : OTHER;
+    }
+}
@@ -0,0 +1,164 @@
+package works.weave.socks.orders.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a line from the order hot path is logged, before its message is formatted.
+ * In summary mode INFO and DEBUG lines are kept for a sample of traces (all lines of a sampled order, or none)
+ * and both those and warnings are capped per second per category. A request carrying the debug baggage field
+ * gets every line of every category, DEBUG included, in either mode.
+ */
+public class HotPathLogFilter extends TurboFilter {
+    public static final String DEBUG_FIELD = "x-debug-log";
+
+    private static final int SAMPLE_SCALE = 10_000;
+
+    /**
+     * Per-category limits; a rate limit below zero means unlimited
+     */
+    public static class Category {
+        private final String name;
+        private final int sampleThreshold;
+        private final RateLimit infoLimit;
+        private final RateLimit warnLimit;
+        private Counter sampledOut;
+        private Counter rateLimited;
+
+        public Category(String name, double sampleRate, int rateLimit, int warnRateLimit) {
+            this.name = name;
+            this.sampleThreshold = (int) Math.round(Math.max(0, Math.min(1, sampleRate)) * SAMPLE_SCALE);
+            this.infoLimit = new RateLimit(rateLimit);
+            this.warnLimit = new RateLimit(warnRateLimit);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final boolean summary;
+
+    // Logger name prefix to category
+    private final Map<String, Category> categories;
+
+    private final Map<String, Optional<Category>> byLogger = new ConcurrentHashMap<>();
+
+    public HotPathLogFilter(boolean summary, Map<String, Category> categories, MeterRegistry registry) {
+        this.summary = summary;
+        this.categories = categories;
+        for (Category category : categories.values()) {
+            category.sampledOut = suppressed(registry, category, "sampled");
+            category.rateLimited = suppressed(registry, category, "rate_limited");
+        }
+        setName("hotPathLogFilter");
+    }
+
+    private static Counter suppressed(MeterRegistry registry, Category category, String reason) {
+        return Counter.builder("orders.logging.suppressed")
+                .description("Hot path log lines dropped before formatting")
+                .tag("category", category.name)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        Category category = category(logger.getName());
+        if (category == null) {
+            return FilterReply.NEUTRAL;
+        }
+        if ("true".equalsIgnoreCase(MDC.get(DEBUG_FIELD))) {
+            return FilterReply.ACCEPT;
+        }
+        if (!summary) {
+            return FilterReply.NEUTRAL;
+        }
+        if (level.isGreaterOrEqual(Level.WARN)) {
+            return allow(category, category.warnLimit);
+        }
+        if (!level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        if (!sampled(category)) {
+            category.sampledOut.increment();
+            return FilterReply.DENY;
+        }
+        return allow(category, category.infoLimit);
+    }
+
+    private FilterReply allow(Category category, RateLimit limit) {
+        if (limit.tryAcquire()) {
+            return FilterReply.NEUTRAL;
+        }
+        category.rateLimited.increment();
+        return FilterReply.DENY;
+    }
+
+    // Keyed on the trace id so one order's lines are kept or dropped together
+    private static boolean sampled(Category category) {
+        if (category.sampleThreshold >= SAMPLE_SCALE) {
+            return true;
+        }
+        String traceId = MDC.get("traceId");
+        int bucket = traceId != null
+                ? Math.floorMod(traceId.hashCode(), SAMPLE_SCALE)
+                : ThreadLocalRandom.current().nextInt(SAMPLE_SCALE);
+        return bucket < category.sampleThreshold;
+    }
+
+    private Category category(String loggerName) {
+        return byLogger.computeIfAbsent(loggerName, name -> {
+            Category match = null;
+            int matchLength = -1;
+            for (Map.Entry<String, Category> entry : categories.entrySet()) {
+                if (name.startsWith(entry.getKey()) && entry.getKey().length() > matchLength) {
+                    match = entry.getValue();
+                    matchLength = entry.getKey().length();
+                }
+            }
+            return Optional.ofNullable(match);
+        }).orElse(null);
+    }
+
+    /**
+     * Fixed one-second window; good enough to keep a burst from flooding the appender
+     */
+    static class RateLimit {
+        private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        private final int perSecond;
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicInteger count = new AtomicInteger();
+
+        RateLimit(int perSecond) {
+            this.perSecond = perSecond;
+        }
+
+        boolean tryAcquire() {
+            if (perSecond < 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            long start = windowStart.get();
+            if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+                count.set(0);
+            }
+            return count.incrementAndGet() <= perSecond;
+        }
+    }
+}
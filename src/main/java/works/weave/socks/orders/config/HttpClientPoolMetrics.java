@@ -0,0 +1,72 @@
+package works.weave.socks.orders.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Leased, pending and available connection gauges per downstream host for the pooled RestTemplate.
+ * Hosts are only known once they are called, so gauges are registered by an interceptor on the first request to each.
+ */
+public class HttpClientPoolMetrics implements ClientHttpRequestInterceptor {
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final MeterRegistry registry;
+
+    private final Set<String> hosts = ConcurrentHashMap.newKeySet();
+
+    public HttpClientPoolMetrics(PoolingHttpClientConnectionManager connectionManager, MeterRegistry registry) {
+        this.connectionManager = connectionManager;
+        this.registry = registry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body,
+                                        ClientHttpRequestExecution execution) throws IOException {
+        String host = host(request.getURI().getScheme(), request.getURI().getHost(), request.getURI().getPort());
+        if (hosts.add(host)) {
+            gauge("orders.http.client.pool.leased", "Connections in use", host, PoolStats::getLeased);
+            gauge("orders.http.client.pool.pending", "Requests waiting for a connection", host, PoolStats::getPending);
+            gauge("orders.http.client.pool.available", "Idle connections kept alive", host, PoolStats::getAvailable);
+        }
+        return execution.execute(request, body);
+    }
+
+    private void gauge(String name, String description, String host, ToIntFunction<PoolStats> stat) {
+        Gauge.builder(name, () -> sum(host, stat))
+                .description(description)
+                .tag("host", host)
+                .register(registry);
+    }
+
+    // With a proxy there can be several routes to one target host
+    private int sum(String host, ToIntFunction<PoolStats> stat) {
+        int total = 0;
+        for (HttpRoute route : connectionManager.getRoutes()) {
+            HttpHost target = route.getTargetHost();
+            if (host.equals(host(target.getSchemeName(), target.getHostName(), target.getPort()))) {
+                total += stat.applyAsInt(connectionManager.getStats(route));
+            }
+        }
+        return total;
+    }
+
+    private static String host(String scheme, String name, int port) {
+        if (port <= 0) {
+            port = "https".equalsIgnoreCase(scheme) ? 443 : 80;
+        }
+        return name + ":" + port;
+    }
+}
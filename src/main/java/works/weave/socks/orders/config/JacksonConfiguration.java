@@ -0,0 +1,18 @@
+package works.weave.socks.orders.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfiguration {
+    /**
+     * Generated accessors instead of reflection for every bean Jackson binds.
+     * Spring Boot adds Module beans to its ObjectMapper and to the one Spring Data REST renders with.
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+}
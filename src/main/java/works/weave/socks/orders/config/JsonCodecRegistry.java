@@ -0,0 +1,145 @@
+package works.weave.socks.orders.config;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.MediaTypes;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.DefaultLinkRelationProvider;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.entities.Address;
+import works.weave.socks.orders.entities.Card;
+import works.weave.socks.orders.entities.Customer;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.entities.Shipment;
+import works.weave.socks.orders.values.OrderFields;
+import works.weave.socks.orders.values.PaymentRequest;
+import works.weave.socks.orders.values.PaymentResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Jackson readers and writers for the downstream calls made on every order.
+ * Both mappers derive from the Spring Boot ObjectMapper, which has the Blackbird module (see JacksonConfiguration),
+ * so they share its configuration with the Spring Data REST output; the HAL mapper adds the HAL module, and the
+ * fields writer can leave out order fields (see OrderFields).
+ * Readers are cached per target type and writers per class, and the ones every order needs are built at startup.
+ */
+@Component
+public class JsonCodecRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonCodecRegistry.class);
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectMapper halMapper;
+
+    private final ObjectWriter fieldsWriter;
+
+    private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Type, ObjectReader> halReaders = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public JsonCodecRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.halMapper = objectMapper.copy();
+        halMapper.registerModule(new Jackson2HalModule());
+        halMapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(
+                new DefaultLinkRelationProvider(), CurieProvider.NONE, MessageResolver.DEFAULTS_ONLY));
+        halMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.fieldsWriter = OrderFields.filtering(objectMapper).writer();
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Cached reader for type, from the HAL mapper if mediaType is HAL
+     */
+    public ObjectReader reader(ParameterizedTypeReference<?> type, MediaType mediaType) {
+        if (MediaTypes.HAL_JSON.isCompatibleWith(mediaType)) {
+            return halReaders.computeIfAbsent(type.getType(),
+                    t -> halMapper.readerFor(halMapper.constructType(t)));
+        }
+        return readers.computeIfAbsent(type.getType(), t -> objectMapper.readerFor(objectMapper.constructType(t)));
+    }
+
+    public ObjectWriter writer(Class<?> type) {
+        return writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+
+    /**
+     * Writer for orders, or values holding them, with only the given order fields
+     */
+    public ObjectWriter writer(OrderFields fields) {
+        return fields.writer(fieldsWriter);
+    }
+
+    /**
+     * Read a value, or null for an empty body as the message converters do
+     */
+    public <T> T read(InputStream body, ParameterizedTypeReference<T> type, MediaType mediaType) throws IOException {
+        ObjectReader reader = reader(type, mediaType);
+        try (JsonParser parser = reader.createParser(body)) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return reader.readValue(parser);
+        }
+    }
+
+    public byte[] write(Object value) throws IOException {
+        return writer(value.getClass()).writeValueAsBytes(value);
+    }
+
+    /**
+     * HAL converter for RestTemplates that decode through message converters
+     */
+    public MappingJackson2HttpMessageConverter halConverter() {
+        MappingJackson2HttpMessageConverter converter = new MappingJackson2HttpMessageConverter(halMapper);
+        converter.setSupportedMediaTypes(Collections.singletonList(MediaTypes.HAL_JSON));
+        return converter;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        long start = System.nanoTime();
+        reader(new ParameterizedTypeReference<EntityModel<Customer>>() {
+        }, MediaTypes.HAL_JSON);
+        reader(new ParameterizedTypeReference<EntityModel<Address>>() {
+        }, MediaTypes.HAL_JSON);
+        reader(new ParameterizedTypeReference<EntityModel<Card>>() {
+        }, MediaTypes.HAL_JSON);
+        reader(new ParameterizedTypeReference<List<Item>>() {
+        }, MediaType.APPLICATION_JSON);
+        reader(new ParameterizedTypeReference<PaymentResponse>() {
+        }, MediaType.APPLICATION_JSON);
+        reader(new ParameterizedTypeReference<Shipment>() {
+        }, MediaType.APPLICATION_JSON);
+        writer(PaymentRequest.class);
+        writer(Shipment.class);
+        LOG.info("JSON codecs warmed up in {}ms: {} readers, {} writers",
+                (System.nanoTime() - start) / 1_000_000, readers.size() + halReaders.size(), writers.size());
+    }
+}
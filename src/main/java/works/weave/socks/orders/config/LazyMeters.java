@@ -0,0 +1,37 @@
+package works.weave.socks.orders.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.function.Function;
+
+/**
+ * Meters registered on first use rather than when their owner is built.
+ * Span handlers and task decorators are created while the context is still post-processing beans; resolving the
+ * registry at that point would create it, and every meter binder, before the post-processors that apply to it.
+ */
+class LazyMeters<T> {
+    private final ObjectProvider<MeterRegistry> registry;
+
+    private final Function<MeterRegistry, T> factory;
+
+    private volatile T meters;
+
+    LazyMeters(ObjectProvider<MeterRegistry> registry, Function<MeterRegistry, T> factory) {
+        this.registry = registry;
+        this.factory = factory;
+    }
+
+    T get() {
+        T current = meters;
+        if (current == null) {
+            synchronized (this) {
+                if (meters == null) {
+                    meters = factory.apply(registry.getObject());
+                }
+                current = meters;
+            }
+        }
+        return current;
+    }
+}
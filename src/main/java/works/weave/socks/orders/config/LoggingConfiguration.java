@@ -0,0 +1,97 @@
+package works.weave.socks.orders.config;
+
+import ch.qos.logback.classic.LoggerContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Installs the hot path log filter on the Logback context.
+ * orders.logging.mode=summary keeps a sample of the per-step pipeline, downstream and repository lines, capped per
+ * category; the one summary line per order (logger orders.summary) is never filtered. Each category is tuned with
+ * orders.logging.&lt;category&gt;.* falling back to orders.logging.*.
+ */
+@Configuration
+public class LoggingConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingConfiguration.class);
+
+    private static final String BASE = "works.weave.socks.orders.";
+
+    private static final Map<String, List<String>> CATEGORIES = new LinkedHashMap<>();
+
+    static {
+        CATEGORIES.put("pipeline", Arrays.asList(
+                BASE + "controllers.OrdersController",
+                BASE + "services.OrderPipelineService",
+                BASE + "services.OrderSubmissionService"));
+        CATEGORIES.put("downstream", Arrays.asList(
+                BASE + "services.AsyncGetService",
+                BASE + "services.BlockingDownstreamClient",
+                BASE + "services.ReactiveDownstreamClient",
+                BASE + "services.CaffeineResourceCache",
+                BASE + "config.TracingLoggingInterceptor"));
+        CATEGORIES.put("repository", Arrays.asList(
+                BASE + "services.OrderService",
+                BASE + "services.OrderBatchWriter",
+                BASE + "services.OrderExportService",
+                BASE + "config.RepositoryTracingAspect"));
+    }
+
+    @Value("${orders.logging.mode:verbose}")
+    private String mode;
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private HotPathLogFilter filter;
+
+    @PostConstruct
+    public void installFilter() {
+        ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+        if (!(factory instanceof LoggerContext)) {
+            LOG.warn("Logging backend is {}, not Logback; hot path log filter not installed", factory.getClass().getName());
+            return;
+        }
+        boolean summary = "summary".equalsIgnoreCase(mode);
+        Map<String, HotPathLogFilter.Category> byPrefix = new LinkedHashMap<>();
+        CATEGORIES.forEach((name, loggers) -> {
+            HotPathLogFilter.Category category = new HotPathLogFilter.Category(name,
+                    property(name, "sample-rate", Double.class, 0.01),
+                    property(name, "rate-limit", Integer.class, 100),
+                    property(name, "warn-rate-limit", Integer.class, 100));
+            loggers.forEach(logger -> byPrefix.put(logger, category));
+        });
+        filter = new HotPathLogFilter(summary, byPrefix, meterRegistry);
+        filter.start();
+        ((LoggerContext) factory).addTurboFilter(filter);
+        LOG.info("Hot path logging mode: {}", summary ? "summary" : "verbose");
+    }
+
+    private <T> T property(String category, String key, Class<T> type, T defaultValue) {
+        return env.getProperty("orders.logging." + category + "." + key, type,
+                env.getProperty("orders.logging." + key, type, defaultValue));
+    }
+
+    @PreDestroy
+    public void removeFilter() {
+        if (filter != null) {
+            ((LoggerContext) LoggerFactory.getILoggerFactory()).getTurboFilterList().remove(filter);
+            filter.stop();
+        }
+    }
+}
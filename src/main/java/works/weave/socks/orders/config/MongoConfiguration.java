@@ -4,13 +4,24 @@ import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.connection.ConnectionPoolSettings;
 import com.mongodb.connection.SocketSettings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
 import org.springframework.data.mongodb.config.AbstractMongoClientConfiguration;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
 
+import java.time.Duration;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
@@ -23,11 +34,42 @@ public class MongoConfiguration extends AbstractMongoClientConfiguration {
     @Value("${spring.application.name:orders}")
     private String databaseName;
 
+    @Value("${mongodb.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    @Value("${mongodb.slow-command:100ms}")
+    private Duration slowCommand;
+
+    @Value("${mongodb.observation.enabled:true}")
+    private boolean observationEnabled;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
     @Override
     protected String getDatabaseName() {
         return databaseName;
     }
 
+    /**
+     * The default converter, except that reference lookups fail instead of querying another collection per reference.
+     * The address and card DBRefs of orders not yet migrated by CustomerReferenceMigration read as id-only snapshots.
+     */
+    @Bean
+    @Override
+    public MappingMongoConverter mappingMongoConverter(MongoDatabaseFactory databaseFactory,
+                                                       MongoCustomConversions customConversions,
+                                                       MongoMappingContext mappingContext) {
+        MappingMongoConverter converter = new MappingMongoConverter(
+                new ReferenceLookupGuard(Set.of("address", "card")), mappingContext);
+        converter.setCustomConversions(customConversions);
+        converter.setCodecRegistryProvider(databaseFactory);
+        return converter;
+    }
+
     @Override
     protected void configureClientSettings(MongoClientSettings.Builder builder) {
         LOG.info("Configuring MongoDB client with connection pooling and retry settings");
@@ -71,6 +113,19 @@ public class MongoConfiguration extends AbstractMongoClientConfiguration {
                 .retryReads(true)      // Enable retry for read operations
                 .retryWrites(true);    // Enable retry for write operations
 
+        // Driver level instrumentation sees every command, whichever repository or template issued it
+        if (metricsEnabled) {
+            MongoDriverMetrics driverMetrics = new MongoDriverMetrics(meterRegistry, slowCommand);
+            builder.addCommandListener(driverMetrics)
+                    .applyToConnectionPoolSettings(b -> b.addConnectionPoolListener(driverMetrics));
+            LOG.info("MongoDB driver metrics enabled: slowCommand={}ms", slowCommand.toMillis());
+        }
+        if (observationEnabled) {
+            builder.contextProvider(ContextProviderFactory.create(observationRegistry))
+                    .addCommandListener(new MongoObservationCommandListener(observationRegistry, connectionString));
+            LOG.info("MongoDB command observations enabled");
+        }
+
         LOG.info("MongoDB client configuration completed with retry enabled");
     }
 }
@@ -0,0 +1,247 @@
+package works.weave.socks.orders.config;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Driver level MongoDB metrics, covering every command whichever path issued it (repositories, Spring Data REST,
+ * MongoTemplate). Commands are timed by command, collection and outcome, and those slower than the threshold are
+ * logged with the shape of the command (field names only, no values). Connection checkouts are timed and the pool
+ * size, connections in use and waiting requests are gauged per server.
+ */
+public class MongoDriverMetrics implements CommandListener, ConnectionPoolListener {
+    private static final Logger LOG = LoggerFactory.getLogger(MongoDriverMetrics.class);
+
+    // Command fields that are protocol plumbing rather than part of the operation
+    private static final Set<String> IGNORED_FIELDS = Set.of("$db", "lsid", "$clusterTime", "txnNumber",
+            "$readPreference", "readConcern", "writeConcern", "apiVersion", "autocommit", "startTransaction");
+
+    private final MeterRegistry registry;
+
+    private final long slowNanos;
+
+    // Commands in flight by request id; the completion events do not carry the command
+    private final Map<Integer, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<ServerId, Pool> pools = new ConcurrentHashMap<>();
+
+    // "command collection status" -> timer, so completing a command does not go through the registry lookup
+    private final Map<String, Timer> commandTimers = new ConcurrentHashMap<>();
+
+    // "command collection" -> slow command counter
+    private final Map<String, Counter> slowCommands = new ConcurrentHashMap<>();
+
+    private static class InFlight {
+        private final String collection;
+        private final String shape;
+
+        private InFlight(String collection, String shape) {
+            this.collection = collection;
+            this.shape = shape;
+        }
+    }
+
+    private class Pool {
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final List<Meter> meters = new ArrayList<>();
+        private final Timer checkoutSucceeded;
+        private final Map<ConnectionCheckOutFailedEvent.Reason, Timer> checkoutFailed = new ConcurrentHashMap<>();
+        private final String server;
+
+        private Pool(ServerId serverId) {
+            server = serverId.getAddress().toString();
+            meters.add(Gauge.builder("orders.mongodb.pool.size", size, AtomicInteger::get)
+                    .description("Open connections in the MongoDB pool")
+                    .tag("server", server)
+                    .register(registry));
+            meters.add(Gauge.builder("orders.mongodb.pool.in-use", inUse, AtomicInteger::get)
+                    .description("MongoDB connections checked out")
+                    .tag("server", server)
+                    .register(registry));
+            meters.add(Gauge.builder("orders.mongodb.pool.waiting", waiting, AtomicInteger::get)
+                    .description("Requests waiting to check out a MongoDB connection")
+                    .tag("server", server)
+                    .register(registry));
+            checkoutSucceeded = checkoutTimer("success");
+        }
+
+        private Timer checkoutTimer(String outcome) {
+            Timer timer = Timer.builder("orders.mongodb.pool.checkout")
+                    .description("Time waiting for a MongoDB connection from the pool")
+                    .tag("server", server)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(10_000))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(registry);
+            meters.add(timer);
+            return timer;
+        }
+    }
+
+    public MongoDriverMetrics(MeterRegistry registry, Duration slowCommand) {
+        this.registry = registry;
+        this.slowNanos = slowCommand.toNanos();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonDocument command = event.getCommand();
+        inFlight.put(event.getRequestId(), new InFlight(collection(event.getCommandName(), command),
+                slowNanos > 0 ? shape(command) : null));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        completed(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS),
+                "success", event.getConnectionDescription().getServerAddress().toString());
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        completed(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS),
+                "error", event.getConnectionDescription().getServerAddress().toString());
+    }
+
+    private void completed(int requestId, String commandName, long nanos, String status, String server) {
+        InFlight command = inFlight.remove(requestId);
+        String collection = command != null ? command.collection : "unknown";
+        commandTimers.computeIfAbsent(commandName + " " + collection + " " + status,
+                        key -> Timer.builder("orders.mongodb.commands")
+                                .description("MongoDB command latency as seen by the driver")
+                                .tag("command", commandName)
+                                .tag("collection", collection)
+                                .tag("status", status)
+                                .publishPercentileHistogram()
+                                .minimumExpectedValue(Duration.ofNanos(50_000))
+                                .maximumExpectedValue(Duration.ofSeconds(30))
+                                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (slowNanos > 0 && nanos >= slowNanos) {
+            slowCommands.computeIfAbsent(commandName + " " + collection,
+                            key -> Counter.builder("orders.mongodb.commands.slow")
+                                    .description("MongoDB commands slower than mongodb.slow-command")
+                                    .tag("command", commandName)
+                                    .tag("collection", collection)
+                                    .register(registry))
+                    .increment();
+            LOG.warn("Slow MongoDB command: {} on {} took {}ms ({}) against {}: {}", commandName, collection,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), status, server, command != null ? command.shape : "");
+        }
+    }
+
+    // The collection is the value of the command name field, except for getMore
+    static String collection(String commandName, BsonDocument command) {
+        BsonValue value = command.get("getMore".equals(commandName) ? "collection" : commandName);
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+
+    /**
+     * Field names of the command and of its nested documents, e.g. {find, filter: {customerId}, sort: {date}}
+     */
+    static String shape(BsonDocument command) {
+        StringBuilder shape = new StringBuilder("{");
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            if (IGNORED_FIELDS.contains(field.getKey())) {
+                continue;
+            }
+            if (shape.length() > 1) {
+                shape.append(", ");
+            }
+            shape.append(field.getKey());
+            BsonValue value = field.getValue();
+            if (value.isDocument()) {
+                shape.append(": ").append(value.asDocument().keySet());
+            } else if (value.isArray()) {
+                shape.append(": [").append(value.asArray().size()).append(']');
+            }
+        }
+        return shape.append('}').toString();
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        pools.computeIfAbsent(event.getServerId(), Pool::new);
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        Pool pool = pools.remove(event.getServerId());
+        if (pool != null) {
+            pool.meters.forEach(registry::remove);
+        }
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        pool(event.getConnectionId().getServerId()).size.incrementAndGet();
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        pool(event.getConnectionId().getServerId()).size.decrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        pool(event.getServerId()).waiting.incrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        Pool pool = pool(event.getConnectionId().getServerId());
+        pool.waiting.decrementAndGet();
+        pool.inUse.incrementAndGet();
+        pool.checkoutSucceeded.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        Pool pool = pool(event.getServerId());
+        pool.waiting.decrementAndGet();
+        pool.checkoutFailed.computeIfAbsent(event.getReason(),
+                        reason -> pool.checkoutTimer("failed_" + reason.name().toLowerCase()))
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        pool(event.getConnectionId().getServerId()).inUse.decrementAndGet();
+    }
+
+    private Pool pool(ServerId serverId) {
+        return pools.computeIfAbsent(serverId, Pool::new);
+    }
+}
@@ -0,0 +1,69 @@
+package works.weave.socks.orders.config;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.mongodb.core.convert.DbRefProxyHandler;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.DbRefResolverCallback;
+import org.springframework.data.mongodb.core.convert.ReferenceLookupDelegate;
+import org.springframework.data.mongodb.core.convert.ReferenceResolver;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * DbRefResolver for a model without references: orders embed everything they show, so a read that would look up a
+ * DBRef or document reference is a mapping bug (one query per reference) and fails instead of going to the database.
+ * <p>
+ * DBRefs into the legacy collections, left in orders stored before the customer's addresses and cards were embedded,
+ * are answered with a document holding just the referenced id, also without a lookup.
+ */
+public class ReferenceLookupGuard implements DbRefResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(ReferenceLookupGuard.class);
+
+    private final Set<String> legacyCollections;
+
+    public ReferenceLookupGuard(Set<String> legacyCollections) {
+        this.legacyCollections = legacyCollections;
+    }
+
+    @Override
+    public Object resolveDbRef(MongoPersistentProperty property, DBRef dbref, DbRefResolverCallback callback,
+                               DbRefProxyHandler proxyHandler) {
+        throw blocked(property + " -> " + dbref);
+    }
+
+    @Override
+    public Document fetch(DBRef dbRef) {
+        if (!legacyCollections.contains(dbRef.getCollectionName())) {
+            throw blocked(dbRef.toString());
+        }
+        return new Document("_id", dbRef.getId());
+    }
+
+    @Override
+    public List<Document> bulkFetch(List<DBRef> dbRefs) {
+        List<Document> documents = new ArrayList<>(dbRefs.size());
+        for (DBRef dbRef : dbRefs) {
+            documents.add(fetch(dbRef));
+        }
+        return documents;
+    }
+
+    @Override
+    public Object resolveReference(MongoPersistentProperty property, Object source,
+                                   ReferenceLookupDelegate referenceLookupDelegate,
+                                   ReferenceResolver.MongoEntityReader entityReader) {
+        throw blocked(property + " -> " + source);
+    }
+
+    private static InvalidDataAccessApiUsageException blocked(String reference) {
+        LOG.error("Blocked MongoDB reference lookup: {}", reference);
+        return new InvalidDataAccessApiUsageException("MongoDB reference lookups are disabled, found " + reference);
+    }
+}
@@ -8,16 +8,20 @@ import org.aspectj.lang.annotation.Aspect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
 /**
  * Aspect for adding tracing to repository method calls
- * This intercepts calls to CustomerOrderRepository methods and wraps them with Observation spans
+ * This intercepts calls to CustomerOrderRepository methods and wraps them with Observation spans.
+ * Superseded by the driver level command observations and metrics in MongoConfiguration; kept behind
+ * mongodb.repository-aspect.enabled for dashboards that still use its span names.
  */
 @Aspect
 @Component
+@ConditionalOnProperty(name = "mongodb.repository-aspect.enabled", havingValue = "true")
 public class RepositoryTracingAspect {
     private static final Logger LOG = LoggerFactory.getLogger(RepositoryTracingAspect.class);
 
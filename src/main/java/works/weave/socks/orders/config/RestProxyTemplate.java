@@ -1,5 +1,18 @@
 package works.weave.socks.orders.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,14 +20,23 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
 
+/**
+ * RestTemplate for the downstream services.
+ * Requests go through a keep-alive connection pool (Apache HttpClient 5) with per-host limits and idle eviction,
+ * or through the JDK HttpClient when http.pool.http2 is set, which negotiates HTTP/2 and multiplexes on one connection.
+ */
 @Configuration
 public class RestProxyTemplate {
     private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -25,9 +47,38 @@ public class RestProxyTemplate {
     @Value("${proxy.port:}")
     private String port;
 
+    @Value("${http.pool.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${http.pool.max-total:200}")
+    private int maxTotal;
+
+    @Value("${http.pool.idle-evict:30s}")
+    private Duration idleEvict;
+
+    @Value("${http.pool.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${http.pool.read-timeout:5s}")
+    private Duration readTimeout;
+
+    @Value("${http.pool.acquire-timeout:2s}")
+    private Duration acquireTimeout;
+
+    @Value("${http.pool.http2:false}")
+    private boolean http2;
+
     @Autowired
     private RestTemplateBuilder restTemplateBuilder;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JsonCodecRegistry codecs;
+
+    private CloseableHttpClient pooledClient;
+
     @Bean
     public RestTemplate restTemplate() {
         // Use RestTemplateBuilder which automatically configures tracing interceptors
@@ -35,24 +86,19 @@ public class RestProxyTemplate {
 
         logger.info("Configuring RestTemplate with tracing support");
 
+        // HAL bodies are decoded with the shared codec configuration
+        restTemplate.getMessageConverters().add(0, codecs.halConverter());
+
         // Add custom interceptor to log trace headers
         restTemplate.getInterceptors().add(new TracingLoggingInterceptor());
 
-        if (!host.isEmpty() && !port.isEmpty()) {
-            int portNr = -1;
-            try {
-                portNr = Integer.parseInt(port);
-            } catch (NumberFormatException e) {
-                logger.error("Unable to parse the proxy port number");
-                return restTemplate;
-            }
-
-            logger.info("Configuring HTTP proxy: {}:{}", host, portNr);
-            SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-            InetSocketAddress address = new InetSocketAddress(host, portNr);
-            Proxy proxy = new Proxy(Proxy.Type.HTTP, address);
-            factory.setProxy(proxy);
-            restTemplate.setRequestFactory(factory);
+        InetSocketAddress proxy = proxyAddress();
+        if (http2) {
+            restTemplate.setRequestFactory(http2RequestFactory(proxy));
+        } else {
+            PoolingHttpClientConnectionManager connectionManager = connectionManager();
+            restTemplate.setRequestFactory(pooledRequestFactory(connectionManager, proxy));
+            restTemplate.getInterceptors().add(new HttpClientPoolMetrics(connectionManager, meterRegistry));
         }
 
         logger.info("RestTemplate configured with {} interceptors (including tracing)",
@@ -64,4 +110,78 @@ public class RestProxyTemplate {
     public RestTemplate getRestTemplate() {
         return restTemplate();
     }
+
+    private InetSocketAddress proxyAddress() {
+        if (host.isEmpty() || port.isEmpty()) {
+            return null;
+        }
+        try {
+            int portNr = Integer.parseInt(port);
+            logger.info("Configuring HTTP proxy: {}:{}", host, portNr);
+            return new InetSocketAddress(host, portNr);
+        } catch (NumberFormatException e) {
+            logger.error("Unable to parse the proxy port number");
+            return null;
+        }
+    }
+
+    private PoolingHttpClientConnectionManager connectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(maxPerRoute)
+                .setMaxConnTotal(maxTotal)
+                // Reuse the most recently used connection so idle ones age out and get evicted
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .setSocketTimeout(Timeout.of(readTimeout))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    private ClientHttpRequestFactory pooledRequestFactory(PoolingHttpClientConnectionManager connectionManager,
+                                                          InetSocketAddress proxy) {
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleEvict));
+        if (proxy != null) {
+            builder.setProxy(new HttpHost(proxy.getHostString(), proxy.getPort()));
+        }
+        pooledClient = builder.build();
+
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(pooledClient) {
+            // Lets a caller that timed out abort the exchange instead of leaving the thread blocked on the read
+            @Override
+            protected void postProcessHttpRequest(ClassicHttpRequest request) {
+                if (request instanceof Cancellable) {
+                    AbortableRequest.attach((Cancellable) request);
+                }
+            }
+        };
+        factory.setConnectionRequestTimeout(acquireTimeout);
+        logger.info("Pooled HTTP client: maxPerRoute={}, maxTotal={}, idleEvict={}, connectTimeout={}, readTimeout={}",
+                maxPerRoute, maxTotal, idleEvict, connectTimeout, readTimeout);
+        return factory;
+    }
+
+    private ClientHttpRequestFactory http2RequestFactory(InetSocketAddress proxy) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout);
+        if (proxy != null) {
+            builder.proxy(ProxySelector.of(proxy));
+        }
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(builder.build());
+        factory.setReadTimeout(readTimeout);
+        logger.info("HTTP/2 client: connectTimeout={}, readTimeout={}", connectTimeout, readTimeout);
+        return factory;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (pooledClient != null) {
+            pooledClient.close();
+        }
+    }
 }
@@ -0,0 +1,232 @@
+package works.weave.socks.orders.config;
+
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Buffers the spans of each local trace and only passes them to the exporting handler when the trace turns out
+ * to matter: it failed, its local root took longer than the slow threshold, or it falls in the random baseline.
+ * The decision is made when the local root span ends; spans finishing after that follow the same decision.
+ * The buffer is bounded in traces, spans per trace and age, and whatever it has to give up is counted as dropped.
+ */
+public class TailSamplingSpanHandler extends SpanHandler implements Closeable {
+    private final SpanHandler delegate;
+
+    private final long slowMicros;
+
+    private final double baselineRate;
+
+    private final int maxSpansPerTrace;
+
+    // Spans waiting for their local root, keyed by local root span id
+    private final Cache<Long, Pending> pending;
+
+    // Decisions already made, for spans that end after their local root
+    private final Cache<Long, Boolean> decided;
+
+    private final LazyMeters<Meters> meters;
+
+    private static class Pending {
+        private final List<TraceContext> contexts = new ArrayList<>();
+        private final List<MutableSpan> spans = new ArrayList<>();
+        private boolean error;
+        // Set once the decision has taken this trace's spans
+        private boolean closed;
+    }
+
+    private static class Meters {
+        private final Counter keptError;
+        private final Counter keptSlow;
+        private final Counter keptBaseline;
+        private final Counter discarded;
+        private final Counter droppedEvicted;
+        private final Counter droppedSpanLimit;
+
+        private Meters(MeterRegistry registry, Cache<Long, Pending> pending) {
+            keptError = traces(registry, "kept_error");
+            keptSlow = traces(registry, "kept_slow");
+            keptBaseline = traces(registry, "kept_baseline");
+            discarded = traces(registry, "discarded");
+            droppedEvicted = dropped(registry, "evicted");
+            droppedSpanLimit = dropped(registry, "span_limit");
+            Gauge.builder("orders.tracing.tail.buffered", pending, cache -> cache.estimatedSize())
+                    .description("Local traces with spans waiting for a sampling decision")
+                    .register(registry);
+        }
+
+        private static Counter traces(MeterRegistry registry, String decision) {
+            return Counter.builder("orders.tracing.tail.traces")
+                    .description("Local traces by tail sampling decision")
+                    .tag("decision", decision)
+                    .register(registry);
+        }
+
+        private static Counter dropped(MeterRegistry registry, String reason) {
+            return Counter.builder("orders.tracing.tail.dropped")
+                    .description("Spans lost because the tail sampling buffer was full or the trace never completed")
+                    .tag("reason", reason)
+                    .register(registry);
+        }
+    }
+
+    public TailSamplingSpanHandler(SpanHandler delegate, Duration slowThreshold, double baselineRate,
+                                   int maxTraces, int maxSpansPerTrace, Duration maxAge,
+                                   ObjectProvider<MeterRegistry> registry) {
+        this.delegate = delegate;
+        this.slowMicros = slowThreshold.toNanos() / 1000;
+        this.baselineRate = baselineRate;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.pending = Caffeine.newBuilder()
+                .maximumSize(maxTraces)
+                .expireAfterWrite(maxAge)
+                .<Long, Pending>removalListener((key, trace, cause) -> {
+                    if (cause != RemovalCause.EXPLICIT && cause != RemovalCause.REPLACED && trace != null) {
+                        synchronized (trace) {
+                            meters().droppedEvicted.increment(trace.spans.size());
+                        }
+                    }
+                })
+                .build();
+        this.decided = Caffeine.newBuilder()
+                .maximumSize(maxTraces)
+                .expireAfterWrite(maxAge)
+                .build();
+        this.meters = new LazyMeters<>(registry, r -> new Meters(r, pending));
+    }
+
+    private Meters meters() {
+        return meters.get();
+    }
+
+    @Override
+    public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+        if (cause != Cause.FINISHED) {
+            return delegate.end(context, span, cause);
+        }
+        Long rootId = context.localRootId();
+        Boolean keep = decided.getIfPresent(rootId);
+        if (keep != null) {
+            return !keep || delegate.end(context, span, cause);
+        }
+
+        if (context.isLocalRoot()) {
+            Pending trace = pending.asMap().remove(rootId);
+            return decide(rootId, context, span, trace);
+        }
+
+        Pending trace = pending.get(rootId, id -> new Pending());
+        synchronized (trace) {
+            if (trace.closed) {
+                return !Boolean.TRUE.equals(decided.getIfPresent(rootId)) || delegate.end(context, span, cause);
+            }
+            if (trace.spans.size() >= maxSpansPerTrace) {
+                meters().droppedSpanLimit.increment();
+                return true;
+            }
+            trace.contexts.add(context);
+            trace.spans.add(span);
+            trace.error |= isError(span);
+        }
+        // The local root may have been decided while this span was being added
+        if (decided.getIfPresent(rootId) != null) {
+            flushLate(rootId);
+        }
+        return true;
+    }
+
+    private boolean decide(Long rootId, TraceContext rootContext, MutableSpan root, Pending trace) {
+        boolean error = isError(root);
+        if (trace != null) {
+            synchronized (trace) {
+                error |= trace.error;
+            }
+        }
+        Meters meters = meters();
+        Counter decision;
+        if (error) {
+            decision = meters.keptError;
+        } else if (root.finishTimestamp() - root.startTimestamp() >= slowMicros) {
+            decision = meters.keptSlow;
+        } else if (ThreadLocalRandom.current().nextDouble() < baselineRate) {
+            decision = meters.keptBaseline;
+        } else {
+            decision = meters.discarded;
+        }
+        decision.increment();
+        boolean keep = decision != meters.discarded;
+        decided.put(rootId, keep);
+
+        close(trace, keep);
+        if (keep) {
+            delegate.end(rootContext, root, Cause.FINISHED);
+        }
+        flushLate(rootId);
+        return true;
+    }
+
+    private void flushLate(Long rootId) {
+        Pending late = pending.asMap().remove(rootId);
+        if (late != null) {
+            close(late, Boolean.TRUE.equals(decided.getIfPresent(rootId)));
+        }
+    }
+
+    private void close(Pending trace, boolean export) {
+        if (trace == null) {
+            return;
+        }
+        synchronized (trace) {
+            trace.closed = true;
+            if (export) {
+                for (int i = 0; i < trace.spans.size(); i++) {
+                    delegate.end(trace.contexts.get(i), trace.spans.get(i), Cause.FINISHED);
+                }
+            }
+            trace.contexts.clear();
+            trace.spans.clear();
+        }
+    }
+
+    private static boolean isError(MutableSpan span) {
+        if (span.error() != null || span.tag("error") != null) {
+            return true;
+        }
+        String status = span.tag("http.status_code");
+        return status != null && status.startsWith("5");
+    }
+
+    @Override
+    public boolean handlesAbandoned() {
+        return delegate.handlesAbandoned();
+    }
+
+    /**
+     * This handler replaces the exporting bean, so it also takes over closing it and flushing its queue
+     */
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TailSamplingSpanHandler(" + delegate + ")";
+    }
+}
@@ -2,11 +2,19 @@ package works.weave.socks.orders.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.server.observation.ServerRequestObservationContext;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.observation.ObservationPredicate;
+import zipkin2.reporter.brave.AsyncZipkinSpanHandler;
+
+import java.time.Duration;
 
 /**
  * Configuration for distributed tracing with filtering
@@ -42,4 +50,31 @@ public class TracingConfiguration {
             return true; // Observe (create trace)
         };
     }
+
+    /**
+     * Tail sampling: head sampling keeps recording every trace, and the Zipkin span handler is wrapped so that
+     * only slow, failed or baseline traces are exported
+     */
+    @Bean
+    @ConditionalOnProperty(name = "tracing.tail.enabled", havingValue = "true")
+    public static BeanPostProcessor tailSamplingSpanHandlerPostProcessor(Environment env,
+                                                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof AsyncZipkinSpanHandler)) {
+                    return bean;
+                }
+                Duration slowThreshold = env.getProperty("tracing.tail.slow-threshold", Duration.class, Duration.ofMillis(500));
+                double baselineRate = env.getProperty("tracing.tail.baseline-rate", Double.class, 0.01);
+                LOG.info("Tail sampling Zipkin spans: slow threshold {}ms, baseline rate {}",
+                        slowThreshold.toMillis(), baselineRate);
+                return new TailSamplingSpanHandler((AsyncZipkinSpanHandler) bean, slowThreshold, baselineRate,
+                        env.getProperty("tracing.tail.max-traces", Integer.class, 10000),
+                        env.getProperty("tracing.tail.max-spans-per-trace", Integer.class, 256),
+                        env.getProperty("tracing.tail.max-age", Duration.class, Duration.ofSeconds(60)),
+                        meterRegistry);
+            }
+        };
+    }
 }
@@ -0,0 +1,160 @@
+package works.weave.socks.orders.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics for the virtual thread execution mode.
+ * Pinning and failed submissions come from JFR events; carrier utilization is the CPU time used by the
+ * carrier threads over the last sampling interval, divided by the wall time and the scheduler parallelism.
+ * Carriers are sampled on a background thread, not per scrape, by walking the thread groups rather than taking
+ * a stack snapshot of every thread. CPU time is tracked per carrier, so a carrier that exits only loses what it
+ * used since the previous sample.
+ */
+public class VirtualThreadMetrics implements MeterBinder, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadMetrics.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String SUBMIT_FAILED_EVENT = "jdk.VirtualThreadSubmitFailed";
+    private static final String CARRIER_THREAD_CLASS = "jdk.internal.misc.CarrierThread";
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final int parallelism = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    private final Duration interval;
+
+    private RecordingStream recordingStream;
+
+    private ScheduledExecutorService sampler;
+
+    // Written by the sampler thread only
+    private Map<Long, Long> lastCpuNanos = new HashMap<>();
+
+    private long lastWallNanos = System.nanoTime();
+
+    private volatile double utilization;
+
+    public VirtualThreadMetrics(Duration interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("orders.virtual.threads.carrier.parallelism", () -> parallelism)
+                .description("Number of carrier threads available to the virtual thread scheduler")
+                .register(registry);
+        Gauge.builder("orders.virtual.threads.carrier.utilization", this, metrics -> metrics.utilization)
+                .description("Fraction of carrier thread capacity spent running virtual threads over the last sampling interval")
+                .register(registry);
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "virtual-thread-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleWithFixedDelay(this::sampleCarriers, interval.toMillis(), interval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        if (recordingStream != null || Runtime.version().feature() < 21) {
+            return;
+        }
+
+        Counter pinned = Counter.builder("orders.virtual.threads.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier")
+                .register(registry);
+        Timer pinnedDuration = Timer.builder("orders.virtual.threads.pinned.duration")
+                .description("Time virtual threads spent blocked while pinned")
+                .register(registry);
+        Counter submitFailed = Counter.builder("orders.virtual.threads.submit.failed")
+                .description("Virtual threads that could not be scheduled on a carrier")
+                .register(registry);
+
+        try {
+            recordingStream = new RecordingStream();
+            recordingStream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(1));
+            recordingStream.enable(SUBMIT_FAILED_EVENT);
+            recordingStream.onEvent(PINNED_EVENT, event -> {
+                pinned.increment();
+                pinnedDuration.record(event.getDuration());
+            });
+            recordingStream.onEvent(SUBMIT_FAILED_EVENT, event -> submitFailed.increment());
+            recordingStream.startAsync();
+            LOG.info("Recording virtual thread pinning through JFR");
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to start JFR stream for virtual thread metrics: {}", e.getMessage());
+            recordingStream = null;
+        }
+    }
+
+    private void sampleCarriers() {
+        try {
+            Map<Long, Long> cpuNanos = new HashMap<>();
+            long used = 0;
+            for (Thread thread : carrierThreads()) {
+                long threadCpu = threadMXBean.getThreadCpuTime(thread.getId());
+                if (threadCpu > 0) {
+                    cpuNanos.put(thread.getId(), threadCpu);
+                    // A carrier started since the last sample used all of its CPU time in this interval
+                    used += threadCpu - lastCpuNanos.getOrDefault(thread.getId(), 0L);
+                }
+            }
+            long wallNanos = System.nanoTime();
+            long elapsed = wallNanos - lastWallNanos;
+            utilization = elapsed > 0 ? Math.min(1.0, Math.max(0, used) / ((double) elapsed * parallelism)) : 0;
+            lastCpuNanos = cpuNanos;
+            lastWallNanos = wallNanos;
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to sample carrier thread CPU time: {}", e.getMessage());
+        }
+    }
+
+    private static List<Thread> carrierThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() + 16];
+        int count;
+        while ((count = root.enumerate(threads, true)) == threads.length) {
+            threads = new Thread[threads.length * 2];
+        }
+        List<Thread> carriers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (CARRIER_THREAD_CLASS.equals(threads[i].getClass().getName())) {
+                carriers.add(threads[i]);
+            }
+        }
+        return carriers;
+    }
+
+    @Override
+    public void destroy() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package works.weave.socks.orders.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.hateoas.config.HypermediaWebClientConfigurer;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.transport.ProxyProvider;
+
+import java.time.Duration;
+
+/**
+ * Non-blocking WebClient used when http.client=webclient.
+ * Built from Spring Boot's WebClient.Builder so it carries the same observation (B3 propagation) setup as
+ * the RestTemplate, with the HAL codecs and the proxy.host/proxy.port settings RestProxyTemplate uses.
+ * Responses time out after http.timeout seconds, like the pipeline stages waiting for them.
+ */
+@Configuration
+@ConditionalOnProperty(name = "http.client", havingValue = "webclient")
+public class WebClientConfiguration {
+    private static final Logger LOG = LoggerFactory.getLogger(WebClientConfiguration.class);
+
+    @Value("${proxy.host:}")
+    private String host;
+
+    @Value("${proxy.port:}")
+    private String port;
+
+    @Value("${http.timeout:5}")
+    private long timeout;
+
+    @Bean
+    public WebClient downstreamWebClient(WebClient.Builder webClientBuilder,
+                                         ObjectProvider<HypermediaWebClientConfigurer> hypermediaConfigurer) {
+        LOG.info("Configuring reactive WebClient for downstream calls");
+
+        // Fail an exchange the server has not answered within http.timeout, even if nobody is waiting on it any more
+        HttpClient httpClient = HttpClient.create().responseTimeout(Duration.ofSeconds(timeout));
+        if (!host.isEmpty() && !port.isEmpty()) {
+            try {
+                int portNr = Integer.parseInt(port);
+                LOG.info("Configuring HTTP proxy for WebClient: {}:{}", host, portNr);
+                httpClient = httpClient.proxy(proxy -> proxy.type(ProxyProvider.Proxy.HTTP).host(host).port(portNr));
+            } catch (NumberFormatException e) {
+                LOG.error("Unable to parse the proxy port number");
+            }
+        }
+
+        WebClient.Builder builder = webClientBuilder.clientConnector(new ReactorClientHttpConnector(httpClient));
+        hypermediaConfigurer.ifAvailable(configurer -> configurer.registerHypermediaTypes(builder));
+        return builder.build();
+    }
+}
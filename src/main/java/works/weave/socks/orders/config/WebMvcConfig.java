@@ -1,10 +1,49 @@
 package works.weave.socks.orders.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import works.weave.socks.orders.middleware.ConcurrencyLimitFilter;
+import works.weave.socks.orders.middleware.GradientConcurrencyLimit;
 
 @Configuration
 public class WebMvcConfig {
     // HTTP metrics are now automatically provided by Spring Boot 3 Actuator
     // with Micrometer. No custom interceptor needed.
     // Metrics are available at /actuator/prometheus
+
+    @Value("${orders.limiter.initial-limit:100}")
+    private int initialLimit;
+
+    @Value("${orders.limiter.min-limit:10}")
+    private int minLimit;
+
+    @Value("${orders.limiter.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${orders.limiter.tolerance:1.5}")
+    private double tolerance;
+
+    @Value("${orders.limiter.smoothing:0.2}")
+    private double smoothing;
+
+    @Value("${orders.limiter.retry-after:1}")
+    private long retryAfter;
+
+    /**
+     * Adaptive concurrency limit in front of POST /orders
+     */
+    @Bean
+    @ConditionalOnProperty(name = "orders.limiter.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(MeterRegistry meterRegistry) {
+        GradientConcurrencyLimit limit = new GradientConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance, smoothing);
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(limit, retryAfter, meterRegistry));
+        registration.addUrlPatterns("/orders");
+        registration.setName("concurrencyLimitFilter");
+        return registration;
+    }
 }
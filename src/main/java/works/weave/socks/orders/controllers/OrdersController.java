@@ -1,199 +1,360 @@
 package works.weave.socks.orders.controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.RawValue;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.data.rest.webmvc.RepositoryRestController;
-import org.springframework.hateoas.EntityModel;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
-import works.weave.socks.orders.config.OrdersConfigurationProperties;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+import works.weave.socks.orders.config.JsonCodecRegistry;
 import works.weave.socks.orders.entities.*;
 import works.weave.socks.orders.repositories.CustomerOrderRepository;
 import works.weave.socks.orders.resources.NewOrderResource;
-import works.weave.socks.orders.services.AsyncGetService;
+import works.weave.socks.orders.resources.OrderHistoryResource;
+import works.weave.socks.orders.resources.OrderStatusResource;
+import works.weave.socks.orders.resources.OrderSummaryResource;
+import works.weave.socks.orders.services.IdempotencyService;
+import works.weave.socks.orders.services.OrderExportService;
+import works.weave.socks.orders.services.OrderPipelineService;
 import works.weave.socks.orders.services.OrderService;
-import works.weave.socks.orders.values.PaymentRequest;
-import works.weave.socks.orders.values.PaymentResponse;
+import works.weave.socks.orders.services.OrderSubmissionService;
+import works.weave.socks.orders.services.PipelineMetrics;
+import works.weave.socks.orders.values.OrderCursor;
+import works.weave.socks.orders.values.OrderFields;
+import works.weave.socks.orders.values.OrderHistoryFilter;
 
 import java.io.IOException;
-import java.util.Calendar;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
 
 
 @RepositoryRestController
 public class OrdersController {
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final Logger LOG = LoggerFactory.getLogger(getClass());
 
     @Autowired
-    private OrdersConfigurationProperties config;
+    private CustomerOrderRepository customerOrderRepository;
 
     @Autowired
-    private AsyncGetService asyncGetService;
+    private OrderPipelineService orderPipelineService;
 
     @Autowired
-    private CustomerOrderRepository customerOrderRepository;
+    private ObjectProvider<OrderSubmissionService> orderSubmissionService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
 
     @Autowired
     private OrderService orderService;
 
-    @Value(value = "${http.timeout:5}")
-    private long timeout;
+    @Autowired
+    private OrderExportService orderExportService;
+
+    @Autowired
+    private JsonCodecRegistry codecs;
+
+    @Value("${orders.submission.max-wait:30}")
+    private long maxStatusWait;
+
+    @Value("${orders.history.max-page-size:100}")
+    private int maxPageSize;
 
     @ResponseStatus(HttpStatus.CREATED)
     @RequestMapping(path = "/orders", consumes = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST)
     public
     @ResponseBody
-    CustomerOrder newOrder(@RequestBody NewOrderResource item) {
-        LOG.info("=== NEW ORDER REQUEST RECEIVED ===");
-        LOG.info("Request details - address: {}, customer: {}, card: {}, items: {}",
-                item.address, item.customer, item.card, item.items);
+    CompletableFuture<CustomerOrder> newOrder(@RequestBody NewOrderResource item,
+                                              @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        validate(item);
+
+        // Steps 2-8 run as a non-blocking pipeline; the servlet thread is released until it completes
+        return idempotencyService.execute(idempotencyKey, item, () -> orderPipelineService.process(item));
+    }
+
+    /**
+     * Clients sending "Prefer: respond-async" get 202 and a status URL when asynchronous submission is enabled.
+     * Otherwise the preference is ignored and the order is processed as usual.
+     */
+    @RequestMapping(path = "/orders", consumes = MediaType.APPLICATION_JSON_VALUE, method = RequestMethod.POST,
+            headers = "Prefer")
+    public
+    @ResponseBody
+    CompletableFuture<ResponseEntity<Object>> newOrderPreferAsync(@RequestBody NewOrderResource item,
+                                                                 @RequestHeader("Prefer") String prefer,
+                                                                 @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        OrderSubmissionService submissionService = orderSubmissionService.getIfAvailable();
+        if (submissionService == null || !prefer.toLowerCase().contains("respond-async")) {
+            return newOrder(item, idempotencyKey)
+                    .thenApply(order -> ResponseEntity.status(HttpStatus.CREATED).body(order));
+        }
+
+        validate(item);
+        URI statusBase = ServletUriComponentsBuilder.fromCurrentRequestUri().build().toUri();
+        return idempotencyService.execute(idempotencyKey, item,
+                        () -> CompletableFuture.completedFuture(submissionService.submit(item)))
+                .thenApply(pending -> ResponseEntity.accepted()
+                        .location(UriComponentsBuilder.fromUri(statusBase)
+                                .path("/{id}/status")
+                                .buildAndExpand(pending.getId())
+                                .toUri())
+                        .header("Preference-Applied", "respond-async")
+                        .body(new OrderStatusResource(pending)));
+    }
+
+    /**
+     * Status of an order accepted with 202. With wait > 0 the request is held until processing
+     * finishes or the wait (capped by orders.submission.max-wait) runs out.
+     */
+    @RequestMapping(path = "/orders/{id}/status", method = RequestMethod.GET)
+    public
+    @ResponseBody
+    CompletableFuture<ResponseEntity<OrderStatusResource>> orderStatus(@PathVariable("id") String id,
+                                                                       @RequestParam(name = "wait", defaultValue = "0") long wait) {
+        OrderSubmissionService submissionService = orderSubmissionService.getIfAvailable();
+        if (submissionService == null) {
+            return CompletableFuture.completedFuture(customerOrderRepository.findById(id)
+                    .map(order -> ResponseEntity.ok(new OrderStatusResource(order)))
+                    .orElse(ResponseEntity.notFound().build()));
+        }
+        return submissionService.status(id, Math.min(wait, maxStatusWait))
+                .thenApply(status -> status.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * One order with only the given fields, as on customerIdPage; without fields the order is served by Spring Data REST
+     */
+    @RequestMapping(path = "/orders/{id}", method = RequestMethod.GET, params = "fields")
+    public
+    @ResponseBody
+    ResponseEntity<RawValue> orderFields(@PathVariable("id") String id,
+                                       @RequestParam("fields") String fields) {
+        OrderFields selected = parseFields(fields);
+        if (selected == null) {
+            throw new InvalidQueryException("fields must name at least one order field.");
+        }
+        return orderService.findById(id, selected)
+                .map(order -> json(codecs.writer(selected), order))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Summary of one order: id, date, total, item count and status
+     */
+    @RequestMapping(path = "/orders/{id}/summary", method = RequestMethod.GET)
+    public
+    @ResponseBody
+    ResponseEntity<OrderSummaryResource> orderSummary(@PathVariable("id") String id) {
+        return orderService.findSummaryById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
+    /**
+     * A customer's orders newest first, one page at a time: pass the returned next cursor to get the following page.
+     * from (inclusive) and to (exclusive) are ISO-8601 date-times; minTotal and maxTotal are inclusive.
+     * fields is a comma separated list of the order fields to return, all of them when absent.
+     */
+    @RequestMapping(path = "/orders/search/customerIdPage", method = RequestMethod.GET)
+    public
+    @ResponseBody
+    ResponseEntity<?> customerOrderPage(@RequestParam("custId") String customerId,
+                                              @RequestParam(name = "cursor", required = false) String cursor,
+                                              @RequestParam(name = "size", defaultValue = "20") int size,
+                                              @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                              @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                              @RequestParam(name = "minTotal", required = false) Float minTotal,
+                                              @RequestParam(name = "maxTotal", required = false) Float maxTotal,
+                                              @RequestParam(name = "fields", required = false) String fields) {
+        checkPageSize(size);
+        OrderFields selected = parseFields(fields);
+        OrderHistoryResource<CustomerOrder> page = orderService.findCustomerHistory(
+                new OrderHistoryFilter(customerId, from, to, minTotal, maxTotal), selected, parseCursor(cursor), size);
+        if (selected == null) {
+            return ResponseEntity.ok(page);
+        }
+        return json(codecs.writer(selected), page);
+    }
+
+    /**
+     * The same pages as customerIdPage with only the fields the order history shows, projected by MongoDB
+     */
+    @RequestMapping(path = "/orders/search/customerIdSummaryPage", method = RequestMethod.GET)
+    public
+    @ResponseBody
+    OrderHistoryResource<OrderSummaryResource> customerOrderSummaryPage(@RequestParam("custId") String customerId,
+                                                                        @RequestParam(name = "cursor", required = false) String cursor,
+                                                                        @RequestParam(name = "size", defaultValue = "20") int size,
+                                                                        @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                                                        @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                                                        @RequestParam(name = "minTotal", required = false) Float minTotal,
+                                                                        @RequestParam(name = "maxTotal", required = false) Float maxTotal) {
+        checkPageSize(size);
+        return orderService.findCustomerSummaries(new OrderHistoryFilter(customerId, from, to, minTotal, maxTotal),
+                parseCursor(cursor), size);
+    }
+
+    // Written with the fields writer, as the message converters cannot leave out fields; they copy the result as is
+    private static ResponseEntity<RawValue> json(ObjectWriter writer, Object value) {
         try {
-            // Step 1: Validate request
-            LOG.info("Step 1: Validating order request...");
-            if (item.address == null || item.customer == null || item.card == null || item.items == null) {
-                LOG.error("Validation failed - Missing required fields. address={}, customer={}, card={}, items={}",
-                        item.address, item.customer, item.card, item.items);
-                throw new InvalidOrderException("Invalid order request. Order requires customer, address, card and items.");
-            }
-            LOG.info("Step 1: Validation successful");
-
-            // Step 2: Fetch resources from external services
-            LOG.info("Step 2: Starting async calls to fetch address, customer, card, and items...");
-            Future<EntityModel<Address>> addressFuture = asyncGetService.getResource(item.address, new
-                    ParameterizedTypeReference<EntityModel<Address>>() {
-            });
-            LOG.debug("Address request initiated for: {}", item.address);
-
-            Future<EntityModel<Customer>> customerFuture = asyncGetService.getResource(item.customer, new
-                    ParameterizedTypeReference<EntityModel<Customer>>() {
-            });
-            LOG.debug("Customer request initiated for: {}", item.customer);
-
-            Future<EntityModel<Card>> cardFuture = asyncGetService.getResource(item.card, new
-                    ParameterizedTypeReference<EntityModel<Card>>() {
-            });
-            LOG.debug("Card request initiated for: {}", item.card);
-
-            Future<List<Item>> itemsFuture = asyncGetService.getDataList(item.items, new
-                    ParameterizedTypeReference<List<Item>>() {
-            });
-            LOG.debug("Items request initiated for: {}", item.items);
-            LOG.info("Step 2: All async calls initiated");
-
-            // Step 3: Wait for items and calculate total
-            LOG.info("Step 3: Waiting for items response (timeout: {} seconds)...", timeout);
-            List<Item> items = itemsFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Step 3: Items received, count: {}", items != null ? items.size() : 0);
-
-            float amount = calculateTotal(items);
-            LOG.info("Step 3: Order total calculated: ${}", amount);
-
-            // Step 4: Wait for address, card, customer responses
-            LOG.info("Step 4: Waiting for address, card, and customer responses...");
-            EntityModel<Address> addressModel = addressFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Step 4: Address received: {}", addressModel != null ? addressModel.getContent() : "null");
-
-            EntityModel<Card> cardModel = cardFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Step 4: Card received: {}", cardModel != null ? cardModel.getContent() : "null");
-
-            EntityModel<Customer> customerModel = customerFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Step 4: Customer received: {}", customerModel != null ? customerModel.getContent() : "null");
-
-            // Step 5: Call payment service
-            LOG.info("Step 5: Preparing payment request...");
-            PaymentRequest paymentRequest = new PaymentRequest(
-                    addressModel.getContent(),
-                    cardModel.getContent(),
-                    customerModel.getContent(),
-                    amount);
-            LOG.info("Step 5: Sending payment request to: {}, amount: ${}", config.getPaymentUri(), amount);
-
-            Future<PaymentResponse> paymentFuture = asyncGetService.postResource(
-                    config.getPaymentUri(),
-                    paymentRequest,
-                    new ParameterizedTypeReference<PaymentResponse>() {
-                    });
-
-            PaymentResponse paymentResponse = paymentFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Step 5: Payment response received - authorized: {}, message: {}",
-                    paymentResponse != null ? paymentResponse.isAuthorised() : "null",
-                    paymentResponse != null ? paymentResponse.getMessage() : "null");
-
-            if (paymentResponse == null) {
-                LOG.error("Step 5: Payment failed - Unable to parse authorization packet");
-                throw new PaymentDeclinedException("Unable to parse authorisation packet");
+            return ResponseEntity.ok(new RawValue(writer.writeValueAsString(value)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write " + value, e);
+        }
+    }
+
+    private void checkPageSize(int size) {
+        if (size < 1 || size > maxPageSize) {
+            throw new InvalidQueryException("size must be between 1 and " + maxPageSize + ".");
+        }
+    }
+
+    private static OrderCursor parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return OrderCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidQueryException("Invalid cursor.");
+        }
+    }
+
+    private static OrderFields parseFields(String fields) {
+        try {
+            return OrderFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidQueryException(e.getMessage());
+        }
+    }
+
+    /**
+     * Number of a customer's orders matching the same filters as customerIdPage
+     */
+    @RequestMapping(path = "/orders/search/customerIdCount", method = RequestMethod.GET)
+    public
+    @ResponseBody
+    Map<String, Long> customerOrderCount(@RequestParam("custId") String customerId,
+                                         @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+                                         @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+                                         @RequestParam(name = "minTotal", required = false) Float minTotal,
+                                         @RequestParam(name = "maxTotal", required = false) Float maxTotal) {
+        return Collections.singletonMap("count", orderService.countCustomerHistory(
+                new OrderHistoryFilter(customerId, from, to, minTotal, maxTotal)));
+    }
+
+    /**
+     * All orders as newline delimited JSON in id order, gzipped when the client accepts it.
+     * after resumes an interrupted export from the id of the last order received; fields limits the orders to
+     * those fields, as on customerIdPage.
+     * Written on the request thread rather than asynchronously so long exports are not cut by the async request timeout.
+     */
+    @RequestMapping(path = "/orders/export", method = RequestMethod.GET)
+    public void exportOrders(@RequestParam(name = "after", required = false) String after,
+                             @RequestParam(name = "fields", required = false) String fields,
+                             @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                             HttpServletResponse response) throws IOException {
+        if (after != null && !ObjectId.isValid(after)) {
+            throw new InvalidQueryException("after must be an order id.");
+        }
+        OrderFields selected = parseFields(fields);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType("application/x-ndjson");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            // Sync flush, so every batch the export flushes reaches the client. Closing the gzip stream always frees
+            // its Deflater; the response itself is left to the container, so a failed export is not completed
+            try (GZIPOutputStream compressed = new GZIPOutputStream(StreamUtils.nonClosing(out), 8192, true)) {
+                orderExportService.export(after, selected, compressed);
             }
-            if (!paymentResponse.isAuthorised()) {
-                LOG.error("Step 5: Payment declined - {}", paymentResponse.getMessage());
-                throw new PaymentDeclinedException(paymentResponse.getMessage());
+        } else {
+            orderExportService.export(after, selected, out);
+        }
+    }
+
+    /**
+     * Whether Accept-Encoding allows gzip: listed as gzip or x-gzip, or covered by *, with a q-value above 0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzip = null;
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase();
+            boolean accepted = quality(params) > 0;
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip == Boolean.TRUE || accepted;
+            } else if (coding.equals("*")) {
+                wildcard = accepted;
             }
+        }
+        return gzip != null ? gzip : wildcard;
+    }
 
-            // Step 6: Request shipping
-            String customerId = customerModel.getContent().getId();
-            LOG.info("Step 6: Requesting shipment for customer: {}, shipping URI: {}", customerId, config.getShippingUri());
-
-            Future<Shipment> shipmentFuture = asyncGetService.postResource(config.getShippingUri(), new Shipment
-                    (customerId), new ParameterizedTypeReference<Shipment>() {
-            });
-
-            Shipment shipment = shipmentFuture.get(timeout, TimeUnit.SECONDS);
-            LOG.info("Step 6: Shipment response received: {}", shipment);
-
-            // Step 7: Create order object
-            LOG.info("Step 7: Creating order object...");
-            CustomerOrder order = new CustomerOrder(
-                    null,
-                    customerId,
-                    customerModel.getContent(),
-                    addressModel.getContent(),
-                    cardModel.getContent(),
-                    items,
-                    shipment,
-                    Calendar.getInstance().getTime(),
-                    amount);
-            LOG.info("Step 7: Order object created: {}", order);
-
-            // Step 8: Save to database with tracing
-            LOG.info("Step 8: Saving order to MongoDB...");
-            CustomerOrder savedOrder = orderService.saveOrder(order);
-            LOG.info("Step 8: Order saved successfully with ID: {}", savedOrder.getId());
-            LOG.info("=== ORDER CREATION COMPLETED SUCCESSFULLY ===");
-
-            return savedOrder;
-        } catch (TimeoutException e) {
-            LOG.error("ORDER CREATION FAILED - Timeout waiting for service response", e);
-            LOG.error("Timeout details: timeout setting = {} seconds", timeout);
-            throw new IllegalStateException("Unable to create order due to timeout from one of the services.", e);
-        } catch (InterruptedException e) {
-            LOG.error("ORDER CREATION FAILED - Thread interrupted during order processing", e);
-            throw new IllegalStateException("Unable to create order due to interruption.", e);
-        } catch (ExecutionException e) {
-            LOG.error("ORDER CREATION FAILED - Execution exception occurred", e);
-            LOG.error("Root cause: {}", e.getCause() != null ? e.getCause().getMessage() : "unknown");
-            if (e.getCause() != null) {
-                LOG.error("Root cause stack trace:", e.getCause());
+    // An unreadable q-value counts as 0, so a malformed header never turns compression on
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
             }
-            throw new IllegalStateException("Unable to create order due to error: " +
-                    (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()), e);
-        } catch (InvalidOrderException | PaymentDeclinedException e) {
-            LOG.error("ORDER CREATION FAILED - Business validation error: {}", e.getMessage());
-            throw e;
-        } catch (Exception e) {
-            LOG.error("ORDER CREATION FAILED - Unexpected error occurred", e);
-            LOG.error("Error type: {}, Message: {}", e.getClass().getName(), e.getMessage());
-            throw new IllegalStateException("Unable to create order due to unexpected error: " + e.getMessage(), e);
         }
+        return 1;
+    }
+
+    private void validate(NewOrderResource item) {
+        LOG.info("=== NEW ORDER REQUEST RECEIVED ===");
+        LOG.info("Request details - address: {}, customer: {}, card: {}, items: {}",
+                item.address, item.customer, item.card, item.items);
+
+        // Step 1: Validate request
+        LOG.info("Step 1: Validating order request...");
+        long start = System.nanoTime();
+        if (item.address == null || item.customer == null || item.card == null || item.items == null) {
+            LOG.error("Validation failed - Missing required fields. address={}, customer={}, card={}, items={}",
+                    item.address, item.customer, item.card, item.items);
+            InvalidOrderException invalid =
+                    new InvalidOrderException("Invalid order request. Order requires customer, address, card and items.");
+            pipelineMetrics.record(PipelineMetrics.VALIDATE, start, invalid);
+            throw invalid;
+        }
+        pipelineMetrics.record(PipelineMetrics.VALIDATE, start, null);
+        LOG.info("Step 1: Validation successful");
     }
 
 //    TODO: Add link to shipping
@@ -213,25 +374,59 @@ public class OrdersController {
 //        return ResponseEntity.ok(resources);
 //    }
 
-    private float calculateTotal(List<Item> items) {
-        float amount = 0F;
-        float shipping = 4.99F;
-        amount += items.stream().mapToDouble(i -> i.getQuantity() * i.getUnitPrice()).sum();
-        amount += shipping;
-        return amount;
-    }
-
     @ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
-    public class PaymentDeclinedException extends IllegalStateException {
+    public static class PaymentDeclinedException extends IllegalStateException {
         public PaymentDeclinedException(String s) {
             super(s);
         }
     }
 
     @ResponseStatus(value = HttpStatus.NOT_ACCEPTABLE)
-    public class InvalidOrderException extends IllegalStateException {
+    public static class InvalidOrderException extends IllegalStateException {
         public InvalidOrderException(String s) {
             super(s);
         }
     }
+
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    public static class OrderQueueFullException extends IllegalStateException {
+        public OrderQueueFullException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.UNPROCESSABLE_ENTITY)
+    public static class IdempotencyKeyMismatchException extends IllegalStateException {
+        public IdempotencyKeyMismatchException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public static class InvalidIdempotencyKeyException extends IllegalStateException {
+        public InvalidIdempotencyKeyException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.CONFLICT)
+    public static class IdempotencyKeyInProgressException extends IllegalStateException {
+        public IdempotencyKeyInProgressException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public static class InvalidQueryException extends IllegalStateException {
+        public InvalidQueryException(String s) {
+            super(s);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    public static class DownstreamUnavailableException extends IllegalStateException {
+        public DownstreamUnavailableException(String s) {
+            super(s);
+        }
+    }
 }
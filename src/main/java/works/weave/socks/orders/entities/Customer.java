@@ -1,11 +1,12 @@
 package works.weave.socks.orders.entities;
 
 
+import org.springframework.data.annotation.AccessType;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Document
@@ -18,11 +19,13 @@ public class Customer {
     private String lastName;
     private String username;
 
-    @DBRef(lazy = true)
-    private List<Address> addresses = new ArrayList<>();
+    // Embedded snapshots as the user service returned them, never references to resolve on read.
+    // Property access, so documents read from MongoDB get the same unmodifiable copies as the setters make.
+    @AccessType(AccessType.Type.PROPERTY)
+    private List<Address> addresses = Collections.emptyList();
 
-    @DBRef(lazy = true)
-    private List<Card> cards = new ArrayList<>();
+    @AccessType(AccessType.Type.PROPERTY)
+    private List<Card> cards = Collections.emptyList();
 
     public Customer() {
     }
@@ -33,8 +36,8 @@ public class Customer {
         this.firstName = firstName;
         this.lastName = lastName;
         this.username = username;
-        this.addresses = addresses;
-        this.cards = cards;
+        this.addresses = snapshot(addresses);
+        this.cards = snapshot(cards);
     }
 
     public Customer(String firstName, String lastName, String username, List<Address> addresses, List<Card> cards) {
@@ -101,7 +104,7 @@ public class Customer {
     }
 
     public void setAddresses(List<Address> addresses) {
-        this.addresses = addresses;
+        this.addresses = snapshot(addresses);
     }
 
     public List<Card> getCards() {
@@ -109,7 +112,7 @@ public class Customer {
     }
 
     public void setCards(List<Card> cards) {
-        this.cards = cards;
+        this.cards = snapshot(cards);
     }
 
     public String getUsername() {
@@ -119,4 +122,8 @@ public class Customer {
     public void setUsername(String username) {
         this.username = username;
     }
+
+    private static <T> List<T> snapshot(List<T> list) {
+        return list == null || list.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(list));
+    }
 }
@@ -1,8 +1,11 @@
 package works.weave.socks.orders.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.values.OrderStatus;
 
 import java.util.Calendar;
 import java.util.Collection;
@@ -38,6 +41,14 @@ public class CustomerOrder {
 
     private float total;
 
+    private OrderStatus status;
+
+    private String statusMessage;
+
+    // The request an order accepted for background processing was submitted with, so another instance can resume it
+    @JsonIgnore
+    private NewOrderResource submission;
+
     public CustomerOrder() {
     }
 
@@ -64,6 +75,7 @@ public class CustomerOrder {
                 ", card=" + card +
                 ", items=" + items +
                 ", date=" + date +
+                ", status=" + status +
                 '}';
     }
 
@@ -144,4 +156,28 @@ public class CustomerOrder {
     public void setTotal(float total) {
         this.total = total;
     }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+
+    public String getStatusMessage() {
+        return statusMessage;
+    }
+
+    public void setStatusMessage(String statusMessage) {
+        this.statusMessage = statusMessage;
+    }
+
+    public NewOrderResource getSubmission() {
+        return submission;
+    }
+
+    public void setSubmission(NewOrderResource submission) {
+        this.submission = submission;
+    }
 }
@@ -0,0 +1,88 @@
+package works.weave.socks.orders.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * Outcome of a POST /orders made with an Idempotency-Key header.
+ * orderId is null while the first request is still being processed; claimedAt is when that request took the key,
+ * so a claim left by a stopped instance can be taken over. Records expire through a TTL index on createdAt.
+ */
+@Document(collection = "idempotencyKeys")
+public class IdempotencyRecord {
+
+    @Id
+    private String id;
+
+    private String fingerprint;
+
+    private String orderId;
+
+    private Date createdAt;
+
+    private Date claimedAt;
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String id, String fingerprint, String orderId, Date createdAt) {
+        this.id = id;
+        this.fingerprint = fingerprint;
+        this.orderId = orderId;
+        this.createdAt = createdAt;
+        this.claimedAt = createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyRecord{" +
+                "id='" + id + '\'' +
+                ", fingerprint='" + fingerprint + '\'' +
+                ", orderId='" + orderId + '\'' +
+                ", createdAt=" + createdAt +
+                ", claimedAt=" + claimedAt +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Date getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Date claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+}
@@ -0,0 +1,130 @@
+package works.weave.socks.orders.middleware;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for POST /orders.
+ * Requests beyond the adaptive limit are answered with 503 and Retry-After straight away instead of queueing
+ * behind slow downstream calls. A request holds its slot until the response is complete, including the
+ * asynchronous part of the order pipeline.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    private final GradientConcurrencyLimit limit;
+
+    private final long retryAfterSeconds;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final Counter shed;
+
+    public ConcurrencyLimitFilter(GradientConcurrencyLimit limit, long retryAfterSeconds, MeterRegistry registry) {
+        this.limit = limit;
+        this.retryAfterSeconds = retryAfterSeconds;
+        Gauge.builder("orders.limiter.limit", limit, GradientConcurrencyLimit::getLimit)
+                .description("Current concurrency limit for POST /orders")
+                .register(registry);
+        Gauge.builder("orders.limiter.inflight", inFlight, AtomicInteger::get)
+                .description("POST /orders requests currently admitted")
+                .register(registry);
+        shed = Counter.builder("orders.limiter.shed")
+                .description("POST /orders requests rejected with 503 by the concurrency limit")
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        int current = inFlight.incrementAndGet();
+        if (current > limit.getLimit()) {
+            inFlight.decrementAndGet();
+            shed.increment();
+            LOG.warn("Shedding POST /orders: {} in flight, limit {}", current - 1, limit.getLimit());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"message\":\"Too many orders in progress, retry later.\"}");
+            return;
+        }
+
+        Release release = new Release(response, current);
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(release);
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                release.run(false);
+            }
+        }
+    }
+
+    /**
+     * Frees the slot once, whether the request finished synchronously, asynchronously, with an error or a timeout
+     */
+    private class Release implements AsyncListener {
+        private final HttpServletResponse response;
+        private final int admittedWith;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Release(HttpServletResponse response, int admittedWith) {
+            this.response = response;
+            this.admittedWith = admittedWith;
+        }
+
+        private void run(boolean failed) {
+            if (done.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                limit.onSample(System.nanoTime() - start, admittedWith, failed || response.getStatus() >= 500);
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            run(false);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            run(true);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            run(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
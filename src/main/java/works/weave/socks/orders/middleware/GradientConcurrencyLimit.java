@@ -0,0 +1,89 @@
+package works.weave.socks.orders.middleware;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrency limit driven by request latency, after the gradient algorithm of Netflix concurrency-limits.
+ * A long-term average RTT is compared with the average of the latest window: while they agree the limit
+ * grows by about sqrt(limit) per window, when recent latency rises the limit shrinks by the same ratio
+ * (at most by half), and errors or timeouts cut it multiplicatively.
+ */
+public class GradientConcurrencyLimit {
+    private static final int WINDOW_SAMPLES = 20;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int LONG_WINDOW = 600;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+
+    private volatile double limit;
+
+    // Current window; guarded by this
+    private long windowStart = System.nanoTime();
+    private long rttSum;
+    private int samples;
+    private int maxInFlight;
+    private boolean dropped;
+
+    private double longRtt;
+
+    public GradientConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Record a finished request. inFlight is the concurrency it ran with, dropped whether it failed or timed out.
+     */
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        rttSum += rttNanos;
+        samples++;
+        maxInFlight = Math.max(maxInFlight, inFlight);
+        this.dropped |= dropped;
+
+        long now = System.nanoTime();
+        if (samples >= WINDOW_SAMPLES || now - windowStart >= WINDOW_NANOS) {
+            update((double) rttSum / samples);
+            windowStart = now;
+            rttSum = 0;
+            samples = 0;
+            maxInFlight = 0;
+            this.dropped = false;
+        }
+    }
+
+    private void update(double shortRtt) {
+        if (longRtt == 0) {
+            longRtt = shortRtt;
+        } else {
+            longRtt += (shortRtt - longRtt) / LONG_WINDOW;
+        }
+        // After a latency spike the long average is slow to come back down; help it so the limit can recover
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        double newLimit;
+        if (dropped) {
+            newLimit = limit * BACKOFF_RATIO;
+        } else if (maxInFlight < limit / 2) {
+            // Not using the limit, so latency says nothing about whether it is right
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+            newLimit = limit * gradient + Math.sqrt(limit);
+        }
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
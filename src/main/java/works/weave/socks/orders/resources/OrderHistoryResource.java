@@ -0,0 +1,45 @@
+package works.weave.socks.orders.resources;
+
+import java.util.List;
+
+/**
+ * One page of a customer's orders, newest first. next is the cursor for the following page, null on the last one.
+ * The orders are whole orders, summaries or sparse fieldsets, depending on the request.
+ */
+public class OrderHistoryResource<T> {
+    private List<T> orders;
+    private String next;
+
+    // For jackson
+    public OrderHistoryResource() {
+    }
+
+    public OrderHistoryResource(List<T> orders, String next) {
+        this.orders = orders;
+        this.next = next;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderHistoryResource{" +
+                "orders=" + orders.size() +
+                ", next=" + next +
+                '}';
+    }
+
+    public List<T> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<T> orders) {
+        this.orders = orders;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
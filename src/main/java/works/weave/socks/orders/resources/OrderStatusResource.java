@@ -0,0 +1,56 @@
+package works.weave.socks.orders.resources;
+
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.values.OrderStatus;
+
+/**
+ * Body of the 202 response and of GET /orders/{id}/status
+ */
+public class OrderStatusResource {
+    private String id;
+    private OrderStatus status;
+    private String message;
+
+    // For jackson
+    public OrderStatusResource() {
+    }
+
+    public OrderStatusResource(CustomerOrder order) {
+        this.id = order.getId();
+        this.status = order.getStatus();
+        this.message = order.getStatusMessage();
+    }
+
+    @Override
+    public String toString() {
+        return "OrderStatusResource{" +
+                "id=" + id +
+                ", status=" + status +
+                ", message=" + message +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
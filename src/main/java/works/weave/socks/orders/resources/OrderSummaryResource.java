@@ -0,0 +1,71 @@
+package works.weave.socks.orders.resources;
+
+import works.weave.socks.orders.values.OrderStatus;
+
+import java.util.Date;
+
+/**
+ * The fields of an order the history views show, read with a projection instead of the whole document
+ */
+public class OrderSummaryResource {
+    private String id;
+    private Date date;
+    private float total;
+    private int itemCount;
+    private OrderStatus status;
+
+    // For jackson and the Mongo converter
+    public OrderSummaryResource() {
+    }
+
+    @Override
+    public String toString() {
+        return "OrderSummaryResource{" +
+                "id=" + id +
+                ", date=" + date +
+                ", total=" + total +
+                ", itemCount=" + itemCount +
+                ", status=" + status +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public float getTotal() {
+        return total;
+    }
+
+    public void setTotal(float total) {
+        this.total = total;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+}
@@ -1,135 +1,171 @@
 package works.weave.socks.orders.services;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.hateoas.MediaTypes;
-import org.springframework.hateoas.EntityModel;
-import org.springframework.hateoas.CollectionModel;
+import org.springframework.core.env.Environment;
 import org.springframework.http.MediaType;
-import org.springframework.http.RequestEntity;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import works.weave.socks.orders.config.RestProxyTemplate;
+import works.weave.socks.orders.config.OrdersConfigurationProperties;
+import works.weave.socks.orders.values.Downstream;
 
-import java.io.IOException;
 import java.net.URI;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 import static org.springframework.hateoas.MediaTypes.HAL_JSON;
 
+/**
+ * Entry point for all downstream calls made while processing an order.
+ * The actual transport is the configured DownstreamClient.
+ * Concurrent GETs for the same URI and media type share one request (http.coalescing.enabled);
+ * the shared result objects are only read by the order pipeline.
+ * HAL resources go through the ResourceCache when one is configured (http.cache.enabled).
+ * Every call is classified as user, carts, payment or shipping and passes that downstream's DownstreamGuard.
+ * GETs may be hedged (http.hedge.enabled); POSTs to payment and shipping never are.
+ */
 @Service
 public class AsyncGetService {
-    private final Logger LOG = LoggerFactory.getLogger(getClass());
+    private final DownstreamClient downstreamClient;
 
-    private final RestProxyTemplate restProxyTemplate;
+    private final SingleFlight singleFlight;
 
-    private final RestTemplate halTemplate;
+    private final ResourceCache resourceCache;
+
+    private final OrdersConfigurationProperties config;
+
+    private final Map<Downstream, DownstreamGuard> guards = new EnumMap<>(Downstream.class);
+
+    private final Map<Downstream, HedgingPolicy> hedgingPolicies = new EnumMap<>(Downstream.class);
+
+    @Value("${http.coalescing.enabled:true}")
+    private boolean coalescingEnabled = true;
 
     @Autowired
-    public AsyncGetService(RestProxyTemplate restProxyTemplate) {
-        this.restProxyTemplate = restProxyTemplate;
-        this.halTemplate = new RestTemplate(restProxyTemplate.getRestTemplate().getRequestFactory());
-
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        MappingJackson2HttpMessageConverter halConverter = new MappingJackson2HttpMessageConverter();
-        halConverter.setSupportedMediaTypes(Arrays.asList(MediaTypes.HAL_JSON));
-        halConverter.setObjectMapper(objectMapper);
-        halTemplate.setMessageConverters(Collections.singletonList(halConverter));
+    public AsyncGetService(DownstreamClient downstreamClient, MeterRegistry meterRegistry,
+                           ObjectProvider<ResourceCache> resourceCache, OrdersConfigurationProperties config,
+                           Environment environment) {
+        this.downstreamClient = downstreamClient;
+        this.singleFlight = new SingleFlight("orders.downstream.get", meterRegistry);
+        this.resourceCache = resourceCache.getIfAvailable();
+        this.config = config;
+        for (Downstream downstream : Downstream.values()) {
+            guards.put(downstream, DownstreamGuard.create(downstream.tag(), environment, meterRegistry));
+            HedgingPolicy hedging = HedgingPolicy.create(downstream.tag(), environment, meterRegistry);
+            if (hedging != null) {
+                hedgingPolicies.put(downstream, hedging);
+            }
+        }
+        checkBulkheads(guards, downstreamClient.maxConcurrentCalls());
+    }
+
+    /**
+     * Bulkheads only isolate the downstreams when every one of them can use all its permits at the same time;
+     * permits beyond the calls the transport runs at once would queue behind a slow downstream's calls
+     */
+    static void checkBulkheads(Map<Downstream, DownstreamGuard> guards, int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 0) {
+            return;
+        }
+        int total = 0;
+        StringBuilder permits = new StringBuilder();
+        for (Map.Entry<Downstream, DownstreamGuard> entry : guards.entrySet()) {
+            total += entry.getValue().maxConcurrent();
+            permits.append(permits.length() == 0 ? "" : ", ")
+                    .append(entry.getKey().tag()).append('=').append(entry.getValue().maxConcurrent());
+        }
+        if (total > maxConcurrentCalls) {
+            throw new IllegalStateException("Downstream bulkheads allow " + total + " concurrent calls (" + permits
+                    + ") but the task executor runs " + maxConcurrentCalls + " at once; lower "
+                    + "http.downstream.<name>.max-concurrent or raise async.core-pool-size");
+        }
+    }
+
+    public <T> CompletableFuture<T> getResource(URI url, ParameterizedTypeReference<T> type) {
+        if (resourceCache != null) {
+            return resourceCache.get(url, type, etag -> getResourceEntity(url, type, etag));
+        }
+        if (!coalescingEnabled) {
+            return idempotent(url, () -> downstreamClient.getResource(url, type));
+        }
+        return singleFlight.execute(key(HAL_JSON, url, type),
+                () -> idempotent(url, () -> downstreamClient.getResource(url, type)));
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> getResourceEntity(URI url, ParameterizedTypeReference<T> type,
+                                                                       String ifNoneMatch) {
+        if (!coalescingEnabled) {
+            return idempotent(url, () -> downstreamClient.getResourceEntity(url, type, ifNoneMatch));
+        }
+        return singleFlight.execute(key(HAL_JSON, url, type) + " " + ifNoneMatch,
+                () -> idempotent(url, () -> downstreamClient.getResourceEntity(url, type, ifNoneMatch)));
     }
 
-    @Async
-    public <T> Future<T> getResource(URI url, ParameterizedTypeReference<T> type) throws
-            InterruptedException {
-        LOG.info("[AsyncGetService] GET request starting - URL: {}", url);
-        long startTime = System.currentTimeMillis();
-
-        try {
-            RequestEntity<Void> request = RequestEntity.get(url).accept(HAL_JSON).build();
-            LOG.debug("[AsyncGetService] Request details: {}", request);
-            LOG.debug("[AsyncGetService] Request headers: {}", request.getHeaders());
-
-            T body = restProxyTemplate.getRestTemplate().exchange(request, type).getBody();
-
-            long duration = System.currentTimeMillis() - startTime;
-            LOG.info("[AsyncGetService] GET request completed - URL: {}, Duration: {}ms, Response received: {}",
-                    url, duration, body != null ? "success" : "null");
-            LOG.debug("[AsyncGetService] Response body: {}", body);
-
-            return CompletableFuture.completedFuture(body);
-        } catch (Exception e) {
-            long duration = System.currentTimeMillis() - startTime;
-            LOG.error("[AsyncGetService] GET request failed - URL: {}, Duration: {}ms, Error: {}",
-                    url, duration, e.getMessage(), e);
-            throw e;
+    public <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type) {
+        if (!coalescingEnabled) {
+            return idempotent(url, () -> downstreamClient.getDataList(url, type));
         }
+        return singleFlight.execute(key(MediaType.APPLICATION_JSON, url, type),
+                () -> idempotent(url, () -> downstreamClient.getDataList(url, type)));
     }
 
-    @Async
-    public <T> Future<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type) throws
-            InterruptedException {
-        LOG.info("[AsyncGetService] GET DATA LIST request starting - URL: {}", url);
-        long startTime = System.currentTimeMillis();
-
-        try {
-            RequestEntity<Void> request = RequestEntity.get(url).accept(MediaType.APPLICATION_JSON).build();
-            LOG.debug("[AsyncGetService] Request details: {}", request);
-            LOG.debug("[AsyncGetService] Request headers: {}", request.getHeaders());
-
-            List<T> body = restProxyTemplate.getRestTemplate().exchange(request, type).getBody();
-
-            long duration = System.currentTimeMillis() - startTime;
-            LOG.info("[AsyncGetService] GET DATA LIST completed - URL: {}, Duration: {}ms, Items count: {}",
-                    url, duration, body != null ? body.size() : 0);
-            LOG.debug("[AsyncGetService] Response body: {}", body);
-
-            return CompletableFuture.completedFuture(body);
-        } catch (Exception e) {
-            long duration = System.currentTimeMillis() - startTime;
-            LOG.error("[AsyncGetService] GET DATA LIST failed - URL: {}, Duration: {}ms, Error: {}",
-                    url, duration, e.getMessage(), e);
-            throw e;
+    public <T> CompletableFuture<T> getStreamed(URI url, MediaType accept, DownstreamClient.StreamDecoder<T> decoder) {
+        if (!coalescingEnabled) {
+            return idempotent(url, () -> downstreamClient.getStreamed(url, accept, decoder));
         }
+        return singleFlight.execute(accept + " " + url + " " + decoder.getClass().getName(),
+                () -> idempotent(url, () -> downstreamClient.getStreamed(url, accept, decoder)));
+    }
+
+    public <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
+        return guarded(uri, () -> downstreamClient.postResource(uri, body, returnType));
     }
 
-    @Async
-    public <T, B> Future<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
-        LOG.info("[AsyncGetService] POST request starting - URI: {}", uri);
-        LOG.debug("[AsyncGetService] POST request body: {}", body);
-        long startTime = System.currentTimeMillis();
-
-        try {
-            RequestEntity<B> request = RequestEntity.post(uri)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .accept(MediaType.APPLICATION_JSON)
-                    .body(body);
-            LOG.debug("[AsyncGetService] Request details: {}", request);
-            LOG.debug("[AsyncGetService] Request headers: {}", request.getHeaders());
-
-            T responseBody = restProxyTemplate.getRestTemplate().exchange(request, returnType).getBody();
-
-            long duration = System.currentTimeMillis() - startTime;
-            LOG.info("[AsyncGetService] POST request completed - URI: {}, Duration: {}ms, Response received: {}",
-                    uri, duration, responseBody != null ? "success" : "null");
-            LOG.debug("[AsyncGetService] Response body: {}", responseBody);
-
-            return CompletableFuture.completedFuture(responseBody);
-        } catch (Exception e) {
-            long duration = System.currentTimeMillis() - startTime;
-            LOG.error("[AsyncGetService] POST request failed - URI: {}, Duration: {}ms, Error: {}",
-                    uri, duration, e.getMessage(), e);
-            throw e;
+    private <T> CompletableFuture<T> guarded(URI uri, Supplier<CompletableFuture<T>> call) {
+        return guards.get(downstream(uri)).execute(call);
+    }
+
+    // Safe to send twice, so it may be hedged; every attempt passes the guard on its own
+    private <T> CompletableFuture<T> idempotent(URI uri, Supplier<CompletableFuture<T>> call) {
+        Downstream downstream = downstream(uri);
+        DownstreamGuard guard = guards.get(downstream);
+        HedgingPolicy hedging = hedgingPolicies.get(downstream);
+        if (hedging == null) {
+            return guard.execute(call);
         }
+        return hedging.execute(() -> guard.execute(call));
+    }
+
+    /**
+     * payment and shipping by the configured service host, carts by path, everything else is the user service
+     */
+    private Downstream downstream(URI uri) {
+        if (sameHost(uri, config.getPaymentUri())) {
+            return Downstream.PAYMENT;
+        }
+        if (sameHost(uri, config.getShippingUri())) {
+            return Downstream.SHIPPING;
+        }
+        String path = uri.getPath();
+        if (path != null && path.startsWith("/carts")) {
+            return Downstream.CARTS;
+        }
+        return Downstream.USER;
+    }
+
+    private static boolean sameHost(URI uri, URI service) {
+        return Objects.equals(uri.getHost(), service.getHost()) && uri.getPort() == service.getPort();
+    }
+
+    // The target type is part of the key because the same URI decoded into another type is a different result
+    private static String key(MediaType mediaType, URI url, ParameterizedTypeReference<?> type) {
+        return mediaType + " " + url + " " + type.getType().getTypeName();
     }
 }
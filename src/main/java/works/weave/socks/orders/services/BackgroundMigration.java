@@ -0,0 +1,105 @@
+package works.weave.socks.orders.services;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a one-off data migration after startup on its own daemon thread, on one instance at a time.
+ * The instance running it holds a lease in a marker document in the migrations collection and renews it after every
+ * batch; the others skip the migration. The marker records the target the migration completed for, so later starts
+ * with the same target are no-ops. A run that stops early lets its lease expire and the next start resumes it.
+ */
+class BackgroundMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(BackgroundMigration.class);
+
+    static final String MARKERS = "migrations";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final String name;
+
+    private final String target;
+
+    private final Duration lease;
+
+    // Tells this instance's lease apart from the others', so it can renew it
+    private final String owner = new ObjectId().toHexString();
+
+    private ExecutorService executor;
+
+    BackgroundMigration(MongoTemplate mongoTemplate, String name, String target, Duration lease) {
+        this.mongoTemplate = mongoTemplate;
+        this.name = name;
+        this.target = target;
+        this.lease = lease;
+    }
+
+    /**
+     * Run migration on a new thread if this instance gets the lease
+     */
+    void start(Runnable migration) {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> {
+            if (claim()) {
+                migration.run();
+            }
+        });
+        executor.shutdown();
+    }
+
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Take or renew the lease. Returns false once the migration has completed for this target, or while another
+     * instance holds the lease: the upsert then finds no matching marker and its insert collides with the existing one.
+     */
+    boolean claim() {
+        Date now = new Date();
+        Query unclaimed = Query.query(new Criteria().andOperator(
+                Criteria.where("_id").is(name),
+                new Criteria().orOperator(Criteria.where("completed").exists(false), Criteria.where("target").ne(target)),
+                new Criteria().orOperator(Criteria.where("leaseUntil").exists(false), Criteria.where("leaseUntil").lt(now),
+                        Criteria.where("owner").is(owner))));
+        try {
+            mongoTemplate.upsert(unclaimed, Update.update("leaseUntil", new Date(now.getTime() + lease.toMillis()))
+                    .set("owner", owner)
+                    .set("target", target)
+                    .unset("completed"), MARKERS);
+            return true;
+        } catch (DuplicateKeyException e) {
+            LOG.info("Migration {} to {} skipped: completed, or running on another instance", name, target);
+            return false;
+        }
+    }
+
+    /**
+     * Whether a batch may follow: the thread was not interrupted and the lease was renewed
+     */
+    boolean proceed() {
+        return !Thread.currentThread().isInterrupted() && claim();
+    }
+
+    void complete() {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(name).and("owner").is(owner)),
+                Update.update("completed", new Date()).unset("leaseUntil"), MARKERS);
+    }
+}
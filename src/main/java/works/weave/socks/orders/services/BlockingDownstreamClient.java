@@ -0,0 +1,252 @@
+package works.weave.socks.orders.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import works.weave.socks.orders.config.AbortableRequest;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+import works.weave.socks.orders.config.RestProxyTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.springframework.hateoas.MediaTypes.HAL_JSON;
+
+/**
+ * Blocking downstream client: a RestTemplate call per request, run on the async task executor.
+ * A call whose future is completed by the caller first is aborted rather than left to run to the read timeout.
+ * Bodies are read and written with the cached codecs of the JsonCodecRegistry rather than through
+ * message converter negotiation.
+ */
+@Service
+@ConditionalOnProperty(name = "http.client", havingValue = "resttemplate", matchIfMissing = true)
+public class BlockingDownstreamClient implements DownstreamClient {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    private final RestProxyTemplate restProxyTemplate;
+
+    private final JsonCodecRegistry codecs;
+
+    private final Executor taskExecutor;
+
+    @Autowired
+    public BlockingDownstreamClient(RestProxyTemplate restProxyTemplate, JsonCodecRegistry codecs,
+                                    @Qualifier("taskExecutor") Executor taskExecutor) {
+        this.restProxyTemplate = restProxyTemplate;
+        this.codecs = codecs;
+        this.taskExecutor = taskExecutor;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getResource(URI url, ParameterizedTypeReference<T> type) {
+        return submit(() -> {
+            LOG.info("[BlockingDownstreamClient] GET request starting - URL: {}", url);
+            long startTime = System.currentTimeMillis();
+
+            try {
+                T body = get(url, HAL_JSON, null, type).getBody();
+
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.info("[BlockingDownstreamClient] GET request completed - URL: {}, Duration: {}ms, Response received: {}",
+                        url, duration, body != null ? "success" : "null");
+                LOG.debug("[BlockingDownstreamClient] Response body: {}", body);
+
+                return body;
+            } catch (Exception e) {
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.error("[BlockingDownstreamClient] GET request failed - URL: {}, Duration: {}ms, Error: {}",
+                        url, duration, e.getMessage(), e);
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> getResourceEntity(URI url, ParameterizedTypeReference<T> type,
+                                                                      String ifNoneMatch) {
+        return submit(() -> {
+            LOG.info("[BlockingDownstreamClient] GET request starting - URL: {}, If-None-Match: {}", url, ifNoneMatch);
+            long startTime = System.currentTimeMillis();
+
+            try {
+                ResponseEntity<T> response = get(url, HAL_JSON, ifNoneMatch, type);
+
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.info("[BlockingDownstreamClient] GET request completed - URL: {}, Duration: {}ms, Status: {}",
+                        url, duration, response.getStatusCode().value());
+                LOG.debug("[BlockingDownstreamClient] Response body: {}", response.getBody());
+
+                return response;
+            } catch (Exception e) {
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.error("[BlockingDownstreamClient] GET request failed - URL: {}, Duration: {}ms, Error: {}",
+                        url, duration, e.getMessage(), e);
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type) {
+        return submit(() -> {
+            LOG.info("[BlockingDownstreamClient] GET DATA LIST request starting - URL: {}", url);
+            long startTime = System.currentTimeMillis();
+
+            try {
+                List<T> body = get(url, MediaType.APPLICATION_JSON, null, type).getBody();
+
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.info("[BlockingDownstreamClient] GET DATA LIST completed - URL: {}, Duration: {}ms, Items count: {}",
+                        url, duration, body != null ? body.size() : 0);
+                LOG.debug("[BlockingDownstreamClient] Response body: {}", body);
+
+                return body;
+            } catch (Exception e) {
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.error("[BlockingDownstreamClient] GET DATA LIST failed - URL: {}, Duration: {}ms, Error: {}",
+                        url, duration, e.getMessage(), e);
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getStreamed(URI url, MediaType accept, StreamDecoder<T> decoder) {
+        return submit(() -> {
+            LOG.info("[BlockingDownstreamClient] GET STREAMED request starting - URL: {}", url);
+            long startTime = System.currentTimeMillis();
+
+            try {
+                T body = restProxyTemplate.getRestTemplate().execute(url, HttpMethod.GET,
+                        request -> request.getHeaders().setAccept(Collections.singletonList(accept)),
+                        response -> decoder.decode(response.getBody()));
+
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.info("[BlockingDownstreamClient] GET STREAMED completed - URL: {}, Duration: {}ms, Result: {}",
+                        url, duration, body);
+
+                return body;
+            } catch (Exception e) {
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.error("[BlockingDownstreamClient] GET STREAMED failed - URL: {}, Duration: {}ms, Error: {}",
+                        url, duration, e.getMessage(), e);
+                throw e;
+            }
+        });
+    }
+
+    @Override
+    public <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
+        return submit(() -> {
+            LOG.info("[BlockingDownstreamClient] POST request starting - URI: {}", uri);
+            LOG.debug("[BlockingDownstreamClient] POST request body: {}", body);
+            long startTime = System.currentTimeMillis();
+
+            try {
+                byte[] json = encode(body);
+                T responseBody = restProxyTemplate.getRestTemplate().execute(uri, HttpMethod.POST,
+                        request -> {
+                            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+                            request.getBody().write(json);
+                        },
+                        response -> codecs.read(response.getBody(), returnType, MediaType.APPLICATION_JSON));
+
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.info("[BlockingDownstreamClient] POST request completed - URI: {}, Duration: {}ms, Response received: {}",
+                        uri, duration, responseBody != null ? "success" : "null");
+                LOG.debug("[BlockingDownstreamClient] Response body: {}", responseBody);
+
+                return responseBody;
+            } catch (Exception e) {
+                long duration = System.currentTimeMillis() - startTime;
+                LOG.error("[BlockingDownstreamClient] POST request failed - URI: {}, Duration: {}ms, Error: {}",
+                        uri, duration, e.getMessage(), e);
+                throw e;
+            }
+        });
+    }
+
+    // Tasks past the core threads wait in the queue, the pool only grows once the queue is full
+    @Override
+    public int maxConcurrentCalls() {
+        if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+            return ((ThreadPoolTaskExecutor) taskExecutor).getCorePoolSize();
+        }
+        if (taskExecutor instanceof SimpleAsyncTaskExecutor) {
+            return ((SimpleAsyncTaskExecutor) taskExecutor).getConcurrencyLimit();
+        }
+        return -1;
+    }
+
+    /**
+     * Run a blocking call on the task executor.
+     * If the returned future completes first (the caller timed out or cancelled), the call is skipped when still
+     * queued and aborted when running, so it stops holding the executor thread and its connection.
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AbortableRequest request = new AbortableRequest();
+        taskExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(request.run(call));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((body, error) -> request.abort());
+        return future;
+    }
+
+    // Fails the same way the message converter would
+    private byte[] encode(Object body) {
+        try {
+            return codecs.write(body);
+        } catch (IOException e) {
+            throw new HttpMessageNotWritableException("Could not write JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * GET with the registry reader for type. A 304 comes back with no body.
+     */
+    private <T> ResponseEntity<T> get(URI url, MediaType accept, String ifNoneMatch, ParameterizedTypeReference<T> type) {
+        RestTemplate restTemplate = restProxyTemplate.getRestTemplate();
+        return restTemplate.execute(url, HttpMethod.GET,
+                request -> {
+                    request.getHeaders().setAccept(Collections.singletonList(accept));
+                    if (ifNoneMatch != null) {
+                        request.getHeaders().setIfNoneMatch(ifNoneMatch);
+                    }
+                },
+                response -> {
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.putAll(response.getHeaders());
+                    T body = response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)
+                            ? null
+                            : codecs.read(response.getBody(), type, accept);
+                    return new ResponseEntity<>(body, headers, response.getStatusCode());
+                });
+    }
+}
@@ -0,0 +1,261 @@
+package works.weave.socks.orders.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caffeine backed ResourceCache.
+ * Freshness comes from http.cache.ttl.&lt;type&gt; (customer, address, card), capped by the downstream max-age.
+ * A stale entry is served while a conditional refresh runs in the background for up to
+ * http.cache.stale-while-revalidate seconds, one refresh per entry at a time; after that it is kept for
+ * http.cache.revalidate-retention seconds so the next request can revalidate it with If-None-Match instead of
+ * downloading it again.
+ * Entries are bounded by total weight (Content-Length) and, through a minimum weight per entry, by count.
+ */
+@Service
+@ConditionalOnProperty(name = "http.cache.enabled", havingValue = "true")
+public class CaffeineResourceCache implements ResourceCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CaffeineResourceCache.class);
+
+    private static final long DEFAULT_ENTRY_WEIGHT = 1024;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${http.cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${http.cache.max-weight:16777216}")
+    private long maxWeight;
+
+    @Value("${http.cache.ttl.default:60}")
+    private long defaultTtl;
+
+    @Value("${http.cache.stale-while-revalidate:30}")
+    private long staleWhileRevalidate;
+
+    @Value("${http.cache.revalidate-retention:300}")
+    private long revalidateRetention;
+
+    private Cache<String, Entry> cache;
+
+    // Keys with a background revalidation running, so a burst of stale reads starts only one
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        // Caffeine bounds either size or weight; a minimum weight per entry turns the weight bound into both
+        long minWeight = Math.max(1, maxWeight / Math.max(1, maxEntries));
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, entry.weight)))
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "downstream.resources");
+        LOG.info("Downstream resource cache enabled: maxEntries={}, maxWeight={}, staleWhileRevalidate={}s",
+                maxEntries, maxWeight, staleWhileRevalidate);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> get(URI url, ParameterizedTypeReference<T> type, ConditionalFetch<T> fetch) {
+        String resourceType = resourceType(type);
+        String key = type.getType().getTypeName() + " " + url;
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return refresh(key, resourceType, null, fetch);
+        }
+
+        long now = System.nanoTime();
+        if (now - entry.freshUntil < 0) {
+            return CompletableFuture.completedFuture((T) entry.body);
+        }
+        if (now - entry.staleUntil < 0) {
+            LOG.debug("Serving stale {} while revalidating: {}", resourceType, url);
+            staleServed(resourceType).increment();
+            if (revalidating.add(key)) {
+                refresh(key, resourceType, entry, fetch).whenComplete((body, e) -> {
+                    revalidating.remove(key);
+                    if (e != null) {
+                        LOG.warn("Background revalidation failed for {}: {}", url, e.getMessage());
+                    }
+                });
+            }
+            return CompletableFuture.completedFuture((T) entry.body);
+        }
+        return refresh(key, resourceType, entry, fetch);
+    }
+
+    /**
+     * Load the resource, conditionally when there is a previous entry with an ETag, and store the result
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> refresh(String key, String resourceType, Entry previous, ConditionalFetch<T> fetch) {
+        long start = System.nanoTime();
+        CompletableFuture<ResponseEntity<T>> response;
+        try {
+            response = fetch.fetch(previous != null ? previous.etag : null);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.handle((entity, error) -> {
+            if (error != null) {
+                loadTimer(resourceType, "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw error instanceof RuntimeException ? (RuntimeException) error : new IllegalStateException(error);
+            }
+
+            HttpHeaders headers = entity.getHeaders();
+            Entry current;
+            String outcome;
+            if (entity.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && previous != null) {
+                current = newEntry(resourceType, previous.body, headers.getETag() != null ? headers.getETag() : previous.etag,
+                        previous.weight, headers);
+                outcome = "not_modified";
+            } else {
+                long length = headers.getContentLength();
+                current = newEntry(resourceType, entity.getBody(), headers.getETag(),
+                        length > 0 ? length : DEFAULT_ENTRY_WEIGHT, headers);
+                outcome = "loaded";
+            }
+            loadTimer(resourceType, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            if (current != null) {
+                cache.put(key, current);
+            } else {
+                cache.invalidate(key);
+            }
+            return (T) (current != null ? current.body : entity.getBody());
+        });
+    }
+
+    /**
+     * Build an entry from the configured TTL and the response Cache-Control, or null if it must not be stored
+     */
+    private Entry newEntry(String resourceType, Object body, String etag, long weight, HttpHeaders headers) {
+        if (body == null) {
+            return null;
+        }
+        long ttl = environment.getProperty("http.cache.ttl." + resourceType, Long.class, defaultTtl);
+        long stale = staleWhileRevalidate;
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    return null;
+                } else if (directive.equals("no-cache")) {
+                    ttl = 0;
+                    stale = 0;
+                } else if (directive.startsWith("max-age=")) {
+                    ttl = Math.min(ttl, seconds(directive, ttl));
+                } else if (directive.startsWith("stale-while-revalidate=")) {
+                    stale = seconds(directive, stale);
+                }
+            }
+        }
+        long retention = etag != null ? revalidateRetention : 0;
+        if (ttl + stale + retention <= 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long freshUntil = now + TimeUnit.SECONDS.toNanos(ttl);
+        long staleUntil = freshUntil + TimeUnit.SECONDS.toNanos(stale);
+        return new Entry(body, etag, weight, freshUntil, staleUntil, staleUntil + TimeUnit.SECONDS.toNanos(retention));
+    }
+
+    private static long seconds(String directive, long fallback) {
+        try {
+            return Math.max(0, Long.parseLong(directive.substring(directive.indexOf('=') + 1).trim()));
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    /**
+     * customer, address or card for EntityModel&lt;Customer&gt; and so on
+     */
+    private static String resourceType(ParameterizedTypeReference<?> type) {
+        ResolvableType resolvable = ResolvableType.forType(type.getType());
+        Class<?> content = resolvable.hasGenerics() ? resolvable.getGeneric(0).resolve() : resolvable.resolve();
+        return content != null ? content.getSimpleName().toLowerCase(Locale.ROOT) : "default";
+    }
+
+    private Timer loadTimer(String resourceType, String outcome) {
+        return Timer.builder("orders.downstream.cache.load")
+                .description("Time to load or revalidate a cached downstream resource")
+                .tag("type", resourceType)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Counter staleServed(String resourceType) {
+        return Counter.builder("orders.downstream.cache.stale")
+                .description("Stale cache entries served while a background revalidation runs")
+                .tag("type", resourceType)
+                .register(meterRegistry);
+    }
+
+    private static final class Entry {
+        private final Object body;
+        private final String etag;
+        private final long weight;
+        private final long freshUntil;
+        private final long staleUntil;
+        private final long expiresAt;
+
+        private Entry(Object body, String etag, long weight, long freshUntil, long staleUntil, long expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.weight = weight;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class EntryExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String key, Entry entry, long currentTime) {
+            return Math.max(0, entry.expiresAt - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+            return Math.max(0, entry.expiresAt - currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package works.weave.socks.orders.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+import works.weave.socks.orders.controllers.OrdersController.InvalidOrderException;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.values.CartItems;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the carts service item list token by token.
+ * Items are built and validated as they are read and the total is summed in long cents, so no tree, no boxed
+ * numbers and no second pass over the list. The payload size and item count are capped.
+ */
+@Component
+public class CartItemsDecoder implements DownstreamClient.StreamDecoder<CartItems> {
+    @Value("${orders.items.max-count:1000}")
+    private int maxItems;
+
+    @Value("${orders.items.max-bytes:1048576}")
+    private long maxBytes;
+
+    private final JsonFactory jsonFactory;
+
+    @Autowired
+    public CartItemsDecoder(JsonCodecRegistry codecs) {
+        this.jsonFactory = codecs.getObjectMapper().getFactory();
+    }
+
+    @Override
+    public CartItems decode(InputStream body) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(new LimitedInputStream(body, maxBytes))) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new InvalidOrderException("Cart items must be a JSON array.");
+            }
+            List<Item> items = new ArrayList<>();
+            long totalCents = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (items.size() == maxItems) {
+                    throw new InvalidOrderException("Cart has more than " + maxItems + " items.");
+                }
+                totalCents = Math.addExact(totalCents, readItem(parser, items));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new InvalidOrderException("Cart items must be JSON objects.");
+            }
+            return new CartItems(items, totalCents);
+        } catch (ArithmeticException e) {
+            throw new InvalidOrderException("Cart total is out of range.");
+        }
+    }
+
+    /**
+     * Read one item object into items and return its line total in cents
+     */
+    private long readItem(JsonParser parser, List<Item> items) throws IOException {
+        String id = null;
+        String itemId = null;
+        int quantity = 1;
+        long unitPriceCents = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = text(parser, value, "id");
+                    break;
+                case "itemId":
+                    itemId = text(parser, value, "itemId");
+                    break;
+                case "quantity":
+                    if (value != JsonToken.VALUE_NUMBER_INT || parser.getNumberType() != JsonParser.NumberType.INT
+                            || parser.getIntValue() < 0) {
+                        throw new InvalidOrderException("Item quantity must be a non-negative integer.");
+                    }
+                    quantity = parser.getIntValue();
+                    break;
+                case "unitPrice":
+                    unitPriceCents = cents(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (itemId == null) {
+            throw new InvalidOrderException("Item Id must not be null");
+        }
+        items.add(new Item(id, itemId, quantity, unitPriceCents / 100F));
+        return Math.multiplyExact(quantity, unitPriceCents);
+    }
+
+    /**
+     * A scalar as text, the way data binding into a String field would take it; an object or array is rejected
+     * rather than skipped, so its fields are never read as the item's own
+     */
+    private static String text(JsonParser parser, JsonToken value, String field) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!value.isScalarValue()) {
+            throw new InvalidOrderException("Item " + field + " must be a string.");
+        }
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Price in cents, rounded half up, read straight from the number text
+     */
+    private static long cents(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                throw new ArithmeticException("Unit price out of range");
+            }
+            long units = parser.getLongValue();
+            if (units < 0) {
+                throw new InvalidOrderException("Item unit price must not be negative.");
+            }
+            return Math.multiplyExact(units, 100L);
+        }
+        if (value != JsonToken.VALUE_NUMBER_FLOAT) {
+            throw new InvalidOrderException("Item unit price must be a number.");
+        }
+
+        char[] text = parser.getTextCharacters();
+        int start = parser.getTextOffset();
+        int end = start + parser.getTextLength();
+        long units = 0;
+        int fraction = -1;
+        long cents = 0;
+        boolean roundUp = false;
+        for (int i = start; i < end; i++) {
+            char c = text[i];
+            if (c == '-') {
+                throw new InvalidOrderException("Item unit price must not be negative.");
+            } else if (c == '.') {
+                fraction = 0;
+            } else if (c == 'e' || c == 'E') {
+                // Exponent notation is rare enough to take the exact but allocating route
+                return parser.getDecimalValue().movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+            } else if (fraction < 0) {
+                units = Math.addExact(Math.multiplyExact(units, 10L), c - '0');
+            } else if (fraction < 2) {
+                cents = cents * 10 + (c - '0');
+                fraction++;
+            } else if (fraction == 2) {
+                roundUp = c >= '5';
+                fraction++;
+            }
+        }
+        if (fraction == 1) {
+            cents *= 10;
+        }
+        return Math.addExact(Math.multiplyExact(units, 100L), cents + (roundUp ? 1 : 0));
+    }
+
+    /**
+     * Fails the decode as soon as more than maxBytes have been read, so the rest of the body is never buffered
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long read;
+
+        private LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) {
+            read += n;
+            if (read > maxBytes) {
+                throw new InvalidOrderException("Cart items payload is larger than " + maxBytes + " bytes.");
+            }
+        }
+    }
+}
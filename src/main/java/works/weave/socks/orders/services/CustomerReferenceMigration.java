@@ -0,0 +1,129 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.DBRef;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the DBRefs older orders hold in customer.addresses and customer.cards as embedded id-only documents,
+ * the form ReferenceLookupGuard answers them with in the meantime. The referenced documents belong to the user
+ * service and are not looked up.
+ * <p>
+ * Run it once by starting the service with orders.migration.customer-references.enabled=true. It scans the whole
+ * orders collection, as no index covers the DBRefs, so it runs as a BackgroundMigration: after startup, on one
+ * instance, and only until it has completed.
+ */
+@Service
+public class CustomerReferenceMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(CustomerReferenceMigration.class);
+
+    static final String NAME = "customer-references";
+
+    private static final String[] FIELDS = {"addresses", "cards"};
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${orders.migration.customer-references.enabled:false}")
+    private boolean enabled;
+
+    @Value("${orders.migration.customer-references.batch-size:500}")
+    private int batchSize;
+
+    @Value("${orders.migration.customer-references.lease:PT5M}")
+    private Duration lease;
+
+    private BackgroundMigration migration;
+
+    @PostConstruct
+    public void init() {
+        migration = new BackgroundMigration(mongoTemplate, NAME, "embedded", lease);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (enabled) {
+            migration.start(this::migrate);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        migration.stop();
+    }
+
+    /**
+     * @return the number of orders rewritten
+     */
+    long migrate() {
+        MongoCollection<Document> orders = mongoTemplate.getCollection(mongoTemplate.getCollectionName(CustomerOrder.class));
+        Bson legacy = Filters.or(Filters.exists("customer.addresses.$id"), Filters.exists("customer.cards.$id"));
+        LOG.info("Customer reference migration started");
+        long migrated = 0;
+        try (MongoCursor<Document> cursor = orders.find(legacy)
+                .projection(Projections.include("customer.addresses", "customer.cards"))
+                .batchSize(batchSize)
+                .iterator()) {
+            List<WriteModel<Document>> updates = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                Document order = cursor.next();
+                Document customer = order.get("customer", Document.class);
+                List<Bson> embedded = new ArrayList<>();
+                for (String field : FIELDS) {
+                    List<?> values = customer.getList(field, Object.class);
+                    if (values != null) {
+                        embedded.add(Updates.set("customer." + field, embed(values)));
+                    }
+                }
+                updates.add(new UpdateOneModel<>(Filters.eq("_id", order.get("_id")), Updates.combine(embedded)));
+                if (updates.size() == batchSize) {
+                    migrated += orders.bulkWrite(updates).getModifiedCount();
+                    updates.clear();
+                    if (!migration.proceed()) {
+                        LOG.info("Customer reference migration stopped after {} orders, the next start resumes it", migrated);
+                        return migrated;
+                    }
+                }
+            }
+            if (!updates.isEmpty()) {
+                migrated += orders.bulkWrite(updates).getModifiedCount();
+            }
+            migration.complete();
+            LOG.info("Customer reference migration completed: {} orders rewritten with embedded addresses and cards", migrated);
+        } catch (RuntimeException e) {
+            // Unmigrated orders still read as id-only snapshots; the lease expires and the next start tries again
+            LOG.error("Customer reference migration stopped after {} orders", migrated, e);
+        }
+        return migrated;
+    }
+
+    private static List<Object> embed(List<?> values) {
+        List<Object> embedded = new ArrayList<>(values.size());
+        for (Object value : values) {
+            embedded.add(value instanceof DBRef ? new Document("_id", ((DBRef) value).getId()) : value);
+        }
+        return embedded;
+    }
+}
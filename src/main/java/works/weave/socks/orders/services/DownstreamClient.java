@@ -0,0 +1,56 @@
+package works.weave.socks.orders.services;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport used by AsyncGetService to talk to the user, carts, payment and shipping services.
+ * Selected with the http.client property: resttemplate (default) or webclient.
+ */
+public interface DownstreamClient {
+
+    /**
+     * GET a HAL resource
+     */
+    <T> CompletableFuture<T> getResource(URI url, ParameterizedTypeReference<T> type);
+
+    /**
+     * GET a HAL resource with its response headers. When ifNoneMatch is set the request is conditional and
+     * an unchanged resource comes back as 304 with no body.
+     */
+    <T> CompletableFuture<ResponseEntity<T>> getResourceEntity(URI url, ParameterizedTypeReference<T> type, String ifNoneMatch);
+
+    /**
+     * GET a plain JSON list
+     */
+    <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type);
+
+    /**
+     * GET a body and hand it to decoder as a stream, without buffering it as a whole
+     */
+    <T> CompletableFuture<T> getStreamed(URI url, MediaType accept, StreamDecoder<T> decoder);
+
+    /**
+     * POST a JSON body and read a JSON response
+     */
+    <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType);
+
+    /**
+     * Calls this transport runs at once before further calls queue for a thread, or -1 when calls hold no thread
+     */
+    default int maxConcurrentCalls() {
+        return -1;
+    }
+
+    @FunctionalInterface
+    interface StreamDecoder<T> {
+        T decode(InputStream body) throws IOException;
+    }
+}
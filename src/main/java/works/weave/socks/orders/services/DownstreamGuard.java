@@ -0,0 +1,238 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import works.weave.socks.orders.controllers.OrdersController.DownstreamUnavailableException;
+import works.weave.socks.orders.controllers.OrdersController.InvalidOrderException;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead and circuit breaker for one downstream service.
+ * The bulkhead caps the calls in flight and rejects instead of queueing, so a slow service cannot take every
+ * executor thread. The breaker opens when the failure rate over the last calls (slow calls count as failures)
+ * reaches the threshold, rejects calls while open, then lets a few trial calls through to decide whether to close.
+ */
+public class DownstreamGuard {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamGuard.class);
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final double failureRateThreshold;
+    private final int minCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final long slowCallNanos;
+
+    private final Counter rejectedBulkhead;
+    private final Counter rejectedOpen;
+
+    // Outcomes of the last calls while closed, as a ring buffer; guarded by this
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+
+    public DownstreamGuard(String name, int maxConcurrent, int windowSize, int minCalls, double failureRateThreshold,
+                           Duration openDuration, int halfOpenCalls, Duration slowCall, MeterRegistry registry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minCalls = Math.min(Math.max(1, minCalls), window.length);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.slowCallNanos = slowCall.toNanos();
+
+        rejectedBulkhead = rejected(registry, "bulkhead");
+        rejectedOpen = rejected(registry, "circuit_open");
+        Gauge.builder("orders.downstream.circuit.state", this, guard -> guard.state().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .tag("downstream", name)
+                .register(registry);
+        Gauge.builder("orders.downstream.bulkhead.available", permits, Semaphore::availablePermits)
+                .description("Calls that can still start before the bulkhead rejects")
+                .tag("downstream", name)
+                .register(registry);
+    }
+
+    /**
+     * Guard for the named downstream, configured from http.downstream.&lt;name&gt;.* with http.downstream.* as default
+     */
+    public static DownstreamGuard create(String name, Environment env, MeterRegistry registry) {
+        return new DownstreamGuard(name,
+                property(env, name, "max-concurrent", Integer.class, 10),
+                property(env, name, "window-size", Integer.class, 20),
+                property(env, name, "min-calls", Integer.class, 10),
+                property(env, name, "failure-rate-threshold", Double.class, 50.0),
+                property(env, name, "open-duration", Duration.class, Duration.ofSeconds(10)),
+                property(env, name, "half-open-calls", Integer.class, 3),
+                property(env, name, "slow-call", Duration.class, Duration.ofSeconds(env.getProperty("http.timeout", Long.class, 5L))),
+                registry);
+    }
+
+    private static <T> T property(Environment env, String name, String key, Class<T> type, T defaultValue) {
+        return env.getProperty("http.downstream." + name + "." + key, type,
+                env.getProperty("http.downstream." + key, type, defaultValue));
+    }
+
+    private Counter rejected(MeterRegistry registry, String reason) {
+        return Counter.builder("orders.downstream.rejected")
+                .description("Downstream calls rejected without being sent")
+                .tag("downstream", name)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        if (!permits.tryAcquire()) {
+            rejectedBulkhead.increment();
+            LOG.warn("Rejecting call to {}: {} calls already in flight", name, maxConcurrent);
+            return CompletableFuture.failedFuture(new DownstreamUnavailableException(
+                    "Too many concurrent calls to " + name + ", retry later."));
+        }
+        Boolean trial = tryAcquireCircuit();
+        if (trial == null) {
+            permits.release();
+            rejectedOpen.increment();
+            return CompletableFuture.failedFuture(new DownstreamUnavailableException(
+                    "Circuit breaker for " + name + " is open, retry later."));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((value, error) -> {
+            permits.release();
+            // A call cancelled by a timeout or a winning hedge never finished; it says nothing about the service
+            if (error != null && unwrap(error) instanceof CancellationException) {
+                if (trial) {
+                    releaseTrial();
+                }
+                return;
+            }
+            boolean failed = error != null ? isFailure(error) : System.nanoTime() - start > slowCallNanos;
+            onResult(trial, failed);
+        });
+        return result;
+    }
+
+    /**
+     * null if the call is not permitted, otherwise whether it is a half-open trial call
+     */
+    private synchronized Boolean tryAcquireCircuit() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            transition(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return Boolean.FALSE;
+            case HALF_OPEN:
+                if (halfOpenStarted < halfOpenCalls) {
+                    halfOpenStarted++;
+                    return Boolean.TRUE;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private synchronized void onResult(boolean trial, boolean failed) {
+        if (trial && state == State.HALF_OPEN) {
+            if (failed) {
+                transition(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+        } else if (!trial && state == State.CLOSED) {
+            if (windowCount == window.length) {
+                windowFailures -= window[windowIndex] ? 1 : 0;
+            } else {
+                windowCount++;
+            }
+            window[windowIndex] = failed;
+            windowFailures += failed ? 1 : 0;
+            windowIndex = (windowIndex + 1) % window.length;
+            if (windowCount >= minCalls && windowFailures * 100.0 / windowCount >= failureRateThreshold) {
+                transition(State.OPEN);
+            }
+        }
+        // Results of calls started before the last transition do not count
+    }
+
+    // Frees the slot of a trial call that did not finish, so another call can take it
+    private synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN && halfOpenStarted > 0) {
+            halfOpenStarted--;
+        }
+    }
+
+    private void transition(State next) {
+        LOG.warn("Circuit breaker for {} changed from {} to {}", name, state, next);
+        state = next;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        halfOpenStarted = 0;
+        halfOpenSucceeded = 0;
+        if (next == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+    }
+
+    int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    // A 4xx or a rejected payload means the service answered; it says nothing about its health
+    private static boolean isFailure(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof InvalidOrderException) {
+            return false;
+        }
+        if (cause instanceof RestClientResponseException) {
+            return !((RestClientResponseException) cause).getStatusCode().is4xxClientError();
+        }
+        if (cause instanceof WebClientResponseException) {
+            return !((WebClientResponseException) cause).getStatusCode().is4xxClientError();
+        }
+        return true;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,193 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for idempotent GETs to one downstream.
+ * If the first attempt has not answered after the configured percentile of recent latencies, a second attempt is
+ * sent and whichever succeeds first wins; the other is cancelled. Each call earns budget-percent/100 of a token and
+ * each hedge spends one, so hedges stay a bounded fraction of the traffic even when the service is slow overall.
+ */
+public class HedgingPolicy {
+    private static final int MIN_SAMPLES = 100;
+    private static final int RECOMPUTE_EVERY = 50;
+    private static final double MAX_TOKENS = 10;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final double tokensPerCall;
+
+    private final Counter fired;
+    private final Counter won;
+    private final Counter throttled;
+
+    // Recent attempt latencies as a ring buffer; guarded by this
+    private final long[] samples;
+    private int sampleIndex;
+    private int sampleCount;
+    private int sinceRecompute;
+    private double tokens = MAX_TOKENS;
+
+    // Negative until enough latencies have been seen
+    private volatile long delayNanos = -1;
+
+    public HedgingPolicy(String name, double percentile, Duration minDelay, double budgetPercent, int window,
+                         MeterRegistry registry) {
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.tokensPerCall = budgetPercent / 100.0;
+        this.samples = new long[Math.max(MIN_SAMPLES, window)];
+
+        fired = counter(registry, name, "orders.downstream.hedge.fired", "Second attempts sent for a slow GET");
+        won = counter(registry, name, "orders.downstream.hedge.won", "Second attempts that answered before the first");
+        throttled = counter(registry, name, "orders.downstream.hedge.throttled", "Hedges skipped because the budget was spent");
+        Gauge.builder("orders.downstream.hedge.delay", this, policy -> Math.max(0, policy.delayNanos) / 1e9)
+                .description("Time after which a GET is hedged, from the recent latency percentile")
+                .baseUnit("seconds")
+                .tag("downstream", name)
+                .register(registry);
+    }
+
+    /**
+     * Policy for the named downstream from http.hedge.*, or null if hedging is disabled
+     */
+    public static HedgingPolicy create(String name, Environment env, MeterRegistry registry) {
+        if (!env.getProperty("http.hedge.enabled", Boolean.class, false)) {
+            return null;
+        }
+        return new HedgingPolicy(name,
+                env.getProperty("http.hedge.percentile", Double.class, 95.0),
+                env.getProperty("http.hedge.min-delay", Duration.class, Duration.ofMillis(20)),
+                env.getProperty("http.hedge.budget-percent", Double.class, 10.0),
+                env.getProperty("http.hedge.window", Integer.class, 1000),
+                registry);
+    }
+
+    private static Counter counter(MeterRegistry registry, String name, String metric, String description) {
+        return Counter.builder(metric)
+                .description(description)
+                .tag("downstream", name)
+                .register(registry);
+    }
+
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+        earnToken();
+        long delay = delayNanos;
+        if (delay < 0) {
+            return start(attempt);
+        }
+
+        Race<T> race = new Race<>();
+        race.add(start(attempt), false);
+        @SuppressWarnings("deprecation")
+        ContextSnapshot snapshot = ContextSnapshot.captureAll();
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (race.result.isDone()) {
+                return;
+            }
+            if (!spendToken()) {
+                throttled.increment();
+                return;
+            }
+            fired.increment();
+            try (ContextSnapshot.Scope ignored = snapshot.setThreadLocals()) {
+                race.add(start(attempt), true);
+            }
+        });
+        return race.result;
+    }
+
+    private <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> attempt) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                record(System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    private synchronized void earnToken() {
+        tokens = Math.min(MAX_TOKENS, tokens + tokensPerCall);
+    }
+
+    private synchronized boolean spendToken() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        samples[sampleIndex] = latencyNanos;
+        sampleIndex = (sampleIndex + 1) % samples.length;
+        sampleCount = Math.min(sampleCount + 1, samples.length);
+        if (sampleCount >= MIN_SAMPLES && ++sinceRecompute >= RECOMPUTE_EVERY) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+        }
+    }
+
+    /**
+     * First successful attempt wins; the call only fails once every attempt has failed.
+     * Once the result is complete, including by the caller cancelling it or timing out, the attempts still running
+     * are cancelled.
+     */
+    private class Race<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Race() {
+            result.whenComplete((value, error) -> cancelAll());
+        }
+
+        private void add(CompletableFuture<T> attempt, boolean hedge) {
+            pending.incrementAndGet();
+            attempts.add(attempt);
+            attempt.whenComplete((value, error) -> {
+                int left = pending.decrementAndGet();
+                if (error == null) {
+                    if (result.complete(value) && hedge) {
+                        won.increment();
+                    }
+                } else if (left == 0) {
+                    result.completeExceptionally(error);
+                }
+            });
+            if (result.isDone()) {
+                attempt.cancel(true);
+            }
+        }
+
+        // Cancelling an attempt that already completed does nothing
+        private void cancelAll() {
+            for (CompletableFuture<T> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        }
+    }
+}
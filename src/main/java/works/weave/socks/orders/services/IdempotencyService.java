@@ -0,0 +1,259 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.controllers.OrdersController.IdempotencyKeyInProgressException;
+import works.weave.socks.orders.controllers.OrdersController.IdempotencyKeyMismatchException;
+import works.weave.socks.orders.controllers.OrdersController.InvalidIdempotencyKeyException;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.IdempotencyRecord;
+import works.weave.socks.orders.resources.NewOrderResource;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for POST /orders.
+ * Concurrent duplicates on this instance join the first execution through a ConcurrentHashMap (lock-striped per bin).
+ * Completed keys are kept in a Mongo TTL collection so a replay returns the stored order without calling
+ * payment or shipping again; a key claimed by another instance that has not finished yet is answered with 409.
+ * A claim holds for orders.idempotency.claim-lease; after that the key is taken over, so a claim left by a stopped
+ * instance does not block retries until the record expires.
+ */
+@Service
+public class IdempotencyService {
+    private static final Logger LOG = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${orders.idempotency.ttl:86400}")
+    private long ttlSeconds;
+
+    @Value("${orders.idempotency.claim-lease:60s}")
+    private Duration claimLease;
+
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private Counter hits;
+    private Counter misses;
+    private Counter joins;
+
+    @PostConstruct
+    public void init() {
+        hits = counter("hit");
+        misses = counter("miss");
+        joins = counter("join");
+    }
+
+    private Counter counter(String result) {
+        return Counter.builder("orders.idempotency.requests")
+                .description("POST /orders requests carrying an Idempotency-Key")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureTtlIndex() {
+        try {
+            mongoTemplate.indexOps(IdempotencyRecord.class)
+                    .ensureIndex(new Index().on("createdAt", Sort.Direction.ASC).expire(ttlSeconds, TimeUnit.SECONDS));
+            LOG.info("Idempotency key TTL index ensured: ttl={}s", ttlSeconds);
+        } catch (RuntimeException e) {
+            LOG.error("Unable to create idempotency key TTL index", e);
+        }
+    }
+
+    /**
+     * Run action at most once per key. Without a key the action simply runs.
+     */
+    public CompletableFuture<CustomerOrder> execute(String key, NewOrderResource item,
+                                                    Supplier<CompletableFuture<CustomerOrder>> action) {
+        if (key == null || key.isEmpty()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException("Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters.");
+        }
+
+        String fingerprint = fingerprint(item);
+        InFlight mine = new InFlight(fingerprint);
+        InFlight existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            checkFingerprint(existing.fingerprint, fingerprint);
+            LOG.info("Joining in-flight order for Idempotency-Key {}", key);
+            joins.increment();
+            return existing.result.thenApply(Function.identity());
+        }
+
+        IdempotencyRecord record;
+        try {
+            record = claim(key, fingerprint);
+        } catch (RuntimeException e) {
+            finish(key, mine, null, e);
+            throw e;
+        }
+
+        if (record != null) {
+            CustomerOrder stored;
+            try {
+                stored = replay(record, fingerprint);
+            } catch (RuntimeException e) {
+                finish(key, mine, null, e);
+                throw e;
+            }
+            LOG.info("Replaying order {} for Idempotency-Key {}", stored.getId(), key);
+            hits.increment();
+            finish(key, mine, stored, null);
+            return CompletableFuture.completedFuture(stored);
+        }
+
+        misses.increment();
+        CompletableFuture<CustomerOrder> result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        // Recording the outcome blocks on MongoDB, so keep it off the thread that completed the order
+        result.whenComplete((order, error) -> {
+            try {
+                taskExecutor.execute(() -> recordOutcome(key, mine, order, error));
+            } catch (RejectedExecutionException e) {
+                recordOutcome(key, mine, order, error);
+            }
+        });
+        return mine.result.thenApply(Function.identity());
+    }
+
+    private void recordOutcome(String key, InFlight mine, CustomerOrder order, Throwable error) {
+        try {
+            if (error == null) {
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(key)),
+                        Update.update("orderId", order.getId()), IdempotencyRecord.class);
+            } else {
+                // Let the client retry a failed attempt with the same key
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(key)), IdempotencyRecord.class);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Unable to record outcome for Idempotency-Key {}", key, e);
+        }
+        finish(key, mine, order, error);
+    }
+
+    /**
+     * Insert a claim for the key, or take over an unfinished claim whose lease has run out.
+     * Returns null if this request owns the key, or the existing record.
+     */
+    private IdempotencyRecord claim(String key, String fingerprint) {
+        try {
+            mongoTemplate.insert(new IdempotencyRecord(key, fingerprint, null, new Date()));
+            return null;
+        } catch (DuplicateKeyException e) {
+            IdempotencyRecord existing = mongoTemplate.findById(key, IdempotencyRecord.class);
+            if (existing == null) {
+                // Expired or released between the insert and the read
+                return claim(key, fingerprint);
+            }
+            if (existing.getOrderId() == null && existing.getFingerprint().equals(fingerprint)
+                    && isExpired(existing) && takeOver(existing)) {
+                LOG.warn("Taking over Idempotency-Key {} claimed at {} and never completed", key, claimedAt(existing));
+                return null;
+            }
+            return existing;
+        }
+    }
+
+    private boolean isExpired(IdempotencyRecord record) {
+        return claimedAt(record).getTime() + claimLease.toMillis() < System.currentTimeMillis();
+    }
+
+    // Records written before claims had a lease were claimed when they were created
+    private static Date claimedAt(IdempotencyRecord record) {
+        return record.getClaimedAt() != null ? record.getClaimedAt() : record.getCreatedAt();
+    }
+
+    /**
+     * Renew the lease only if nobody completed or took over the claim since it was read
+     */
+    private boolean takeOver(IdempotencyRecord record) {
+        Criteria unchanged = Criteria.where("_id").is(record.getId()).and("orderId").is(null);
+        unchanged = record.getClaimedAt() != null
+                ? unchanged.and("claimedAt").is(record.getClaimedAt())
+                : unchanged.and("claimedAt").exists(false);
+        return mongoTemplate.updateFirst(Query.query(unchanged), Update.update("claimedAt", new Date()),
+                IdempotencyRecord.class).getModifiedCount() > 0;
+    }
+
+    private CustomerOrder replay(IdempotencyRecord record, String fingerprint) {
+        checkFingerprint(record.getFingerprint(), fingerprint);
+        if (record.getOrderId() == null) {
+            throw new IdempotencyKeyInProgressException("An order with this Idempotency-Key is still being processed.");
+        }
+        return orderService.findById(record.getOrderId())
+                .orElseThrow(() -> new IllegalStateException("Order for this Idempotency-Key no longer exists."));
+    }
+
+    private void finish(String key, InFlight mine, CustomerOrder order, Throwable error) {
+        inFlight.remove(key, mine);
+        if (error == null) {
+            mine.result.complete(order);
+        } else {
+            mine.result.completeExceptionally(error);
+        }
+    }
+
+    private void checkFingerprint(String expected, String actual) {
+        if (!expected.equals(actual)) {
+            throw new IdempotencyKeyMismatchException("Idempotency-Key was already used for a different order.");
+        }
+    }
+
+    private String fingerprint(NewOrderResource item) {
+        return item.customer + "|" + item.address + "|" + item.card + "|" + item.items;
+    }
+
+    private static class InFlight {
+        private final String fingerprint;
+        private final CompletableFuture<CustomerOrder> result = new CompletableFuture<>();
+
+        private InFlight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.controllers.OrdersController.OrderQueueFullException;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for new orders.
+ * Concurrent inserts are collected into a window that closes after max-wait from its first order or at max-size
+ * orders, and each window is written with one unordered insertMany. Ids are assigned before the write, so every
+ * caller's future completes with its own order, or with the error of its own document when others went through.
+ * Futures are completed on the task executor, in the caller's trace context, so the callers' continuations never
+ * hold up the flusher threads.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.batch-writer.enabled", havingValue = "true")
+public class OrderBatchWriter {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderBatchWriter.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${orders.batch-writer.max-size:64}")
+    private int maxSize;
+
+    @Value("${orders.batch-writer.max-wait:5ms}")
+    private Duration maxWait;
+
+    @Value("${orders.batch-writer.flushers:2}")
+    private int flushers;
+
+    @Value("${orders.batch-writer.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private BlockingQueue<PendingWrite> queue;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile boolean running;
+
+    private DistributionSummary batchSize;
+
+    private Timer flushSuccess;
+
+    private Timer flushPartial;
+
+    private Timer flushError;
+
+    private Timer waitSuccess;
+
+    private Timer waitError;
+
+    private static class PendingWrite {
+        private final CustomerOrder order;
+        private final CompletableFuture<CustomerOrder> future = new CompletableFuture<>();
+        private final long enqueued = System.nanoTime();
+        @SuppressWarnings("deprecation")
+        private final ContextSnapshot snapshot = ContextSnapshot.captureAll();
+
+        private PendingWrite(CustomerOrder order) {
+            this.order = order;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        batchSize = DistributionSummary.builder("orders.mongodb.batch.size")
+                .description("Orders written per insertMany")
+                .baseUnit("orders")
+                .publishPercentileHistogram()
+                .maximumExpectedValue((double) maxSize)
+                .register(registry);
+        flushSuccess = flushTimer("success");
+        flushPartial = flushTimer("partial");
+        flushError = flushTimer("error");
+        waitSuccess = waitTimer("success");
+        waitError = waitTimer("error");
+        Gauge.builder("orders.mongodb.batch.queued", () -> queue.size())
+                .description("Orders waiting for the next batch")
+                .register(registry);
+
+        running = true;
+        for (int i = 0; i < flushers; i++) {
+            Thread thread = new Thread(this::run, "order-batch-writer-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        LOG.info("Order batch writer started: max {} orders or {} per batch, {} flushers", maxSize, maxWait, flushers);
+    }
+
+    /**
+     * Stop taking orders and write the ones already queued
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        PendingWrite left;
+        while ((left = queue.poll()) != null) {
+            left.future.completeExceptionally(new OrderQueueFullException("Order writer is shutting down, retry later."));
+        }
+    }
+
+    /**
+     * Queue a new order for the next batch; the future completes once the batch is written
+     */
+    public CompletableFuture<CustomerOrder> insert(CustomerOrder order) {
+        if (order.getId() == null) {
+            order.setId(new ObjectId().toHexString());
+        }
+        PendingWrite write = new PendingWrite(order);
+        if (!running || !queue.offer(write)) {
+            LOG.warn("Order writer queue is full, rejecting order {}", order.getId());
+            return CompletableFuture.failedFuture(new OrderQueueFullException("Order writer queue is full, retry later."));
+        }
+        return write.future;
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(maxSize);
+        long maxWaitNanos = maxWait.toNanos();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // The window is timed from the first order, so orders already queued behind a slow flush go out at once
+                long deadline = first.enqueued + maxWaitNanos;
+                while (batch.size() < maxSize) {
+                    queue.drainTo(batch, maxSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(write -> complete(write, e));
+                return;
+            } catch (RuntimeException e) {
+                LOG.error("Order batch writer failed", e);
+                batch.forEach(write -> complete(write, e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<CustomerOrder> orders = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            orders.add(write.order);
+        }
+
+        long start = System.nanoTime();
+        Map<Integer, RuntimeException> failures = new HashMap<>();
+        RuntimeException batchFailure = null;
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerOrder.class).insert(orders).execute();
+        } catch (BulkOperationException e) {
+            // Unordered: documents without a write error of their own were stored
+            for (BulkWriteError error : e.getErrors()) {
+                failures.put(error.getIndex(), error.getCode() == DUPLICATE_KEY
+                        ? new DuplicateKeyException(error.getMessage(), e)
+                        : new DataIntegrityViolationException(error.getMessage(), e));
+            }
+            if (failures.isEmpty()) {
+                batchFailure = e;
+            }
+        } catch (RuntimeException e) {
+            batchFailure = e;
+        }
+        long flushed = System.nanoTime();
+        batchSize.record(batch.size());
+        (batchFailure != null ? flushError : failures.isEmpty() ? flushSuccess : flushPartial)
+                .record(flushed - start, TimeUnit.NANOSECONDS);
+        if (batchFailure != null) {
+            LOG.error("Order batch of {} failed: {}", batch.size(), batchFailure.getMessage());
+        } else if (!failures.isEmpty()) {
+            LOG.warn("Order batch of {} stored with {} failed orders", batch.size(), failures.size());
+        } else {
+            LOG.debug("Order batch of {} stored in {}us", batch.size(), TimeUnit.NANOSECONDS.toMicros(flushed - start));
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite write = batch.get(i);
+            RuntimeException failure = batchFailure != null ? batchFailure : failures.get(i);
+            (failure == null ? waitSuccess : waitError).record(flushed - write.enqueued, TimeUnit.NANOSECONDS);
+            complete(write, failure);
+        }
+    }
+
+    private void complete(PendingWrite write, Throwable failure) {
+        Runnable completion = write.snapshot.wrap((Runnable) () -> {
+            if (failure == null) {
+                write.future.complete(write.order);
+            } else {
+                write.future.completeExceptionally(failure);
+            }
+        });
+        try {
+            taskExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private Timer flushTimer(String outcome) {
+        return Timer.builder("orders.mongodb.batch.flush")
+                .description("insertMany latency per order batch")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer waitTimer(String outcome) {
+        return Timer.builder("orders.mongodb.batch.wait")
+                .description("Time from queueing an order to its batch being written")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
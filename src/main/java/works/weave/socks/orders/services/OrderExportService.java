@@ -0,0 +1,142 @@
+package works.weave.socks.orders.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.values.OrderFields;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the whole order collection as newline delimited JSON, in _id order, straight from a MongoDB cursor.
+ * Only one cursor batch of orders is held at a time and the output is flushed after each batch, so memory use does
+ * not depend on the size of the collection. A client that disconnects ends the export at the next flush and the
+ * cursor is closed; it can resume by passing the id of the last order it received.
+ */
+@Service
+public class OrderExportService {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderExportService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private JsonCodecRegistry codecs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${orders.export.batch-size:500}")
+    private int batchSize;
+
+    private ObjectWriter writer;
+
+    private Counter exported;
+
+    private Counter completed;
+
+    private Counter interrupted;
+
+    @PostConstruct
+    public void init() {
+        // One document per line, and no flush per document
+        writer = codecs.writer(CustomerOrder.class)
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        exported = Counter.builder("orders.export.orders")
+                .description("Orders written by the NDJSON export")
+                .register(meterRegistry);
+        completed = exportCounter("completed");
+        interrupted = exportCounter("interrupted");
+    }
+
+    private Counter exportCounter(String outcome) {
+        return Counter.builder("orders.export.requests")
+                .description("Order exports by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Write every order with an id greater than afterId (all orders when null) to out, with only the given fields
+     * when fields is not null.
+     * The stream is left open for the caller to finish.
+     *
+     * @return the number of orders written
+     * @throws IOException when the client goes away; the cursor is closed before it is thrown
+     * @throws RuntimeException when reading the orders fails, for example when MongoDB is unreachable; the export
+     *                          counts as interrupted
+     */
+    public long export(String afterId, OrderFields fields, OutputStream out) throws IOException {
+        Query query = new Query()
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .cursorBatchSize(batchSize);
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("_id").gt(afterId));
+        }
+        ObjectWriter orderWriter = writer;
+        if (fields != null) {
+            fields.project(query.fields());
+            orderWriter = codecs.writer(fields)
+                    .without(SerializationFeature.INDENT_OUTPUT)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .withRootValueSeparator("\n");
+        }
+        LOG.info("Order export started after={}, fields={}, batchSize={}", afterId, fields, batchSize);
+
+        long count = 0;
+        String lastId = afterId;
+        try (Stream<CustomerOrder> orders = mongoTemplate.stream(query, CustomerOrder.class);
+             JsonGenerator generator = writer.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            Iterator<CustomerOrder> iterator = orders.iterator();
+            while (iterator.hasNext()) {
+                CustomerOrder order = iterator.next();
+                orderWriter.writeValue(generator, order);
+                lastId = order.getId();
+                if (++count % batchSize == 0) {
+                    generator.flush();
+                    out.flush();
+                    exported.increment(batchSize);
+                }
+            }
+            if (count > 0) {
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+            out.flush();
+        } catch (IOException e) {
+            interrupted.increment();
+            exported.increment(count % batchSize);
+            LOG.info("Order export interrupted after {} orders, last id {}: {}", count, lastId, e.toString());
+            throw e;
+        } catch (RuntimeException e) {
+            interrupted.increment();
+            exported.increment(count % batchSize);
+            LOG.error("Order export failed after {} orders, last id {}", count, lastId, e);
+            throw e;
+        }
+        completed.increment();
+        exported.increment(count % batchSize);
+        LOG.info("Order export completed: {} orders, last id {}", count, lastId);
+        return count;
+    }
+}
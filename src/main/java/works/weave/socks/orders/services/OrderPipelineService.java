@@ -0,0 +1,288 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.context.ContextSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.config.ExecutorHop;
+import works.weave.socks.orders.config.OrdersConfigurationProperties;
+import works.weave.socks.orders.controllers.OrdersController.DownstreamUnavailableException;
+import works.weave.socks.orders.controllers.OrdersController.InvalidOrderException;
+import works.weave.socks.orders.controllers.OrdersController.PaymentDeclinedException;
+import works.weave.socks.orders.entities.*;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.values.CartItems;
+import works.weave.socks.orders.values.OrderStatus;
+import works.weave.socks.orders.values.PaymentRequest;
+import works.weave.socks.orders.values.PaymentResponse;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the order flow as a graph of CompletableFuture stages.
+ * Each step starts as soon as its inputs are available and no caller thread is parked waiting:
+ * items -> total, (address, card, customer, total) -> payment -> shipment -> save.
+ */
+@Service
+public class OrderPipelineService {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderPipelineService.class);
+
+    // One line per order, never sampled (see LoggingConfiguration)
+    private static final Logger SUMMARY = LoggerFactory.getLogger("orders.summary");
+
+    private static final long SHIPPING_CENTS = 499;
+
+    @Autowired
+    private OrdersConfigurationProperties config;
+
+    @Autowired
+    private AsyncGetService asyncGetService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartItemsDecoder cartItemsDecoder;
+
+    @Autowired
+    private PipelineMetrics metrics;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value(value = "${http.timeout:5}")
+    private long timeout;
+
+    /**
+     * Start processing a validated order request.
+     * The returned future completes with the saved order, or exceptionally with the same exceptions
+     * the synchronous flow used to throw.
+     */
+    public CompletableFuture<CustomerOrder> process(NewOrderResource item) {
+        return process(item, null);
+    }
+
+    /**
+     * Process an order that was already stored as PENDING.
+     * The stored document moves to PAID once payment is authorised and is replaced by the full order on completion.
+     */
+    public CompletableFuture<CustomerOrder> process(NewOrderResource item, String orderId) {
+        long start = System.nanoTime();
+        // Step 2: Fetch resources from external services
+        LOG.info("Step 2: Starting async calls to fetch address, customer, card, and items...");
+        CompletableFuture<EntityModel<Address>> addressFuture = metrics.time(PipelineMetrics.ADDRESS,
+                call(PipelineMetrics.ADDRESS, () -> asyncGetService.getResource(item.address,
+                        new ParameterizedTypeReference<EntityModel<Address>>() {
+                        })));
+        CompletableFuture<EntityModel<Customer>> customerFuture = metrics.time(PipelineMetrics.CUSTOMER,
+                call(PipelineMetrics.CUSTOMER, () -> asyncGetService.getResource(item.customer,
+                        new ParameterizedTypeReference<EntityModel<Customer>>() {
+                        })));
+        CompletableFuture<EntityModel<Card>> cardFuture = metrics.time(PipelineMetrics.CARD,
+                call(PipelineMetrics.CARD, () -> asyncGetService.getResource(item.card,
+                        new ParameterizedTypeReference<EntityModel<Card>>() {
+                        })));
+        // Items are decoded as a stream, summing the total in cents on the way
+        CompletableFuture<CartItems> cartFuture = metrics.time(PipelineMetrics.ITEMS, call(PipelineMetrics.ITEMS,
+                () -> asyncGetService.getStreamed(item.items, MediaType.APPLICATION_JSON, cartItemsDecoder)));
+        CompletableFuture<List<Item>> itemsFuture = cartFuture.thenApply(CartItems::getItems);
+        LOG.info("Step 2: All async calls initiated");
+
+        // Step 3: Calculate total as soon as the items arrive
+        CompletableFuture<Float> amountFuture = cartFuture.thenApply(cart -> {
+            LOG.info("Step 3: Items received, count: {}", cart.getItems().size());
+            float amount = calculateTotal(cart);
+            LOG.info("Step 3: Order total calculated: ${}", amount);
+            return amount;
+        });
+
+        // Step 4 + 5: Call payment service once address, card, customer and total are known
+        CompletableFuture<PaymentResponse> paymentFuture = CompletableFuture
+                .allOf(addressFuture, cardFuture, customerFuture, amountFuture)
+                .thenCompose(ignored -> {
+                    LOG.info("Step 4: Address, card and customer received");
+                    PaymentRequest paymentRequest = new PaymentRequest(
+                            addressFuture.join().getContent(),
+                            cardFuture.join().getContent(),
+                            customerFuture.join().getContent(),
+                            amountFuture.join());
+                    LOG.info("Step 5: Sending payment request to: {}, amount: ${}",
+                            config.getPaymentUri(), paymentRequest.getAmount());
+                    return metrics.time(PipelineMetrics.PAYMENT, call(PipelineMetrics.PAYMENT,
+                            () -> asyncGetService.postResource(config.getPaymentUri(), paymentRequest,
+                                    new ParameterizedTypeReference<PaymentResponse>() {
+                                    })).thenApply(this::checkAuthorised));
+                });
+        if (orderId != null) {
+            paymentFuture = paymentFuture.thenApplyAsync(paymentResponse -> {
+                orderService.updateStatus(orderId, OrderStatus.PAID, null);
+                return paymentResponse;
+            }, ExecutorHop.tagging(PipelineMetrics.PAYMENT, taskExecutor));
+        }
+
+        // Step 6: Request shipping once payment has been authorised
+        CompletableFuture<Shipment> shipmentFuture = paymentFuture.thenCompose(paymentResponse -> {
+            String customerId = customerFuture.join().getContent().getId();
+            LOG.info("Step 6: Requesting shipment for customer: {}, shipping URI: {}",
+                    customerId, config.getShippingUri());
+            return metrics.time(PipelineMetrics.SHIPMENT, call(PipelineMetrics.SHIPMENT,
+                    () -> asyncGetService.postResource(config.getShippingUri(), new Shipment(customerId),
+                            new ParameterizedTypeReference<Shipment>() {
+                            })));
+        });
+
+        // Step 7 + 8: Build the order and save it; the save blocks on MongoDB (or waits for its batch with the
+        // group-commit writer) so keep it off the caller
+        return shipmentFuture
+                .thenComposeAsync(shipment -> {
+                    LOG.info("Step 6: Shipment response received: {}", shipment);
+                    long buildStart = System.nanoTime();
+                    Customer customer = customerFuture.join().getContent();
+                    CustomerOrder order = new CustomerOrder(
+                            orderId,
+                            customer.getId(),
+                            customer,
+                            addressFuture.join().getContent(),
+                            cardFuture.join().getContent(),
+                            itemsFuture.join(),
+                            shipment,
+                            Calendar.getInstance().getTime(),
+                            amountFuture.join());
+                    order.setStatus(OrderStatus.SHIPPED);
+                    LOG.info("Step 7: Order object created: {}", order);
+                    metrics.record(PipelineMetrics.BUILD, buildStart, null);
+
+                    long saveStart = System.nanoTime();
+                    return orderService.saveOrderAsync(order)
+                            .whenComplete((savedOrder, e) -> metrics.record(PipelineMetrics.SAVE, saveStart, e));
+                }, ExecutorHop.tagging(PipelineMetrics.SAVE, taskExecutor))
+                .thenApply(savedOrder -> {
+                    LOG.info("Step 8: Order saved successfully with ID: {}", savedOrder.getId());
+                    LOG.info("=== ORDER CREATION COMPLETED SUCCESSFULLY ===");
+                    return savedOrder;
+                })
+                .handle((savedOrder, throwable) -> {
+                    if (throwable != null) {
+                        RuntimeException failure = translateFailure(throwable);
+                        logSummary(item, orderId, null, failure, start);
+                        throw failure;
+                    }
+                    logSummary(item, orderId, savedOrder, null, start);
+                    return savedOrder;
+                });
+    }
+
+    private void logSummary(NewOrderResource item, String orderId, CustomerOrder order, RuntimeException failure,
+                            long start) {
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (failure == null) {
+            SUMMARY.info("order outcome=created id={} customer={} items={} total={} duration_ms={}",
+                    order.getId(), order.getCustomerId(), order.getItems().size(), order.getTotal(), durationMs);
+        } else {
+            SUMMARY.warn("order outcome=failed id={} customer={} error={} message=\"{}\" duration_ms={}",
+                    orderId, item.customer, failure.getClass().getSimpleName(), failure.getMessage(), durationMs);
+        }
+    }
+
+    private PaymentResponse checkAuthorised(PaymentResponse paymentResponse) {
+        LOG.info("Step 5: Payment response received - authorized: {}, message: {}",
+                paymentResponse != null ? paymentResponse.isAuthorised() : "null",
+                paymentResponse != null ? paymentResponse.getMessage() : "null");
+
+        if (paymentResponse == null) {
+            LOG.error("Step 5: Payment failed - Unable to parse authorization packet");
+            throw new PaymentDeclinedException("Unable to parse authorisation packet");
+        }
+        if (!paymentResponse.isAuthorised()) {
+            LOG.error("Step 5: Payment declined - {}", paymentResponse.getMessage());
+            throw new PaymentDeclinedException(paymentResponse.getMessage());
+        }
+        return paymentResponse;
+    }
+
+    /**
+     * Start a downstream call with the executor tasks it submits tagged as hop, failing it after http.timeout
+     */
+    private <T> CompletableFuture<T> call(String hop, Supplier<CompletableFuture<T>> call) {
+        return withTimeout(ExecutorHop.during(hop, call));
+    }
+
+    /**
+     * Fail with TimeoutException once the call has taken longer than http.timeout.
+     * The call is then cancelled, which aborts the request and releases its executor thread and bulkhead permit,
+     * and the timeout is delivered on the task executor so later stages never run on the JDK timer thread.
+     */
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // The timer thread has no trace context; restore the caller's for the stages that handle the timeout
+        @SuppressWarnings("deprecation")
+        ContextSnapshot snapshot = ContextSnapshot.captureAll();
+        call.copy().orTimeout(timeout, TimeUnit.SECONDS).whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                call.cancel(true);
+                try {
+                    taskExecutor.execute(snapshot.wrap((Runnable) () -> result.completeExceptionally(error)));
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(error);
+                }
+            } else if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Map a stage failure to the exception the controller used to raise for it
+     */
+    private RuntimeException translateFailure(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+
+        if (cause instanceof PaymentDeclinedException) {
+            LOG.error("ORDER CREATION FAILED - Business validation error: {}", cause.getMessage());
+            return (PaymentDeclinedException) cause;
+        }
+        if (cause instanceof InvalidOrderException) {
+            LOG.error("ORDER CREATION FAILED - Invalid cart: {}", cause.getMessage());
+            return (InvalidOrderException) cause;
+        }
+        if (cause instanceof DownstreamUnavailableException) {
+            LOG.error("ORDER CREATION FAILED - Downstream unavailable: {}", cause.getMessage());
+            return (DownstreamUnavailableException) cause;
+        }
+        if (cause instanceof TimeoutException) {
+            LOG.error("ORDER CREATION FAILED - Timeout waiting for service response", cause);
+            LOG.error("Timeout details: timeout setting = {} seconds", timeout);
+            return new IllegalStateException("Unable to create order due to timeout from one of the services.", cause);
+        }
+        LOG.error("ORDER CREATION FAILED - Execution exception occurred", cause);
+        LOG.error("Error type: {}, Message: {}", cause.getClass().getName(), cause.getMessage());
+        return new IllegalStateException("Unable to create order due to error: " + cause.getMessage(), cause);
+    }
+
+    private float calculateTotal(CartItems cart) {
+        return Math.addExact(cart.getTotalCents(), SHIPPING_CENTS) / 100F;
+    }
+}
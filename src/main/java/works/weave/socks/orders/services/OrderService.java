@@ -1,27 +1,82 @@
 package works.weave.socks.orders.services;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.ProjectionOperation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import works.weave.socks.orders.entities.CustomerOrder;
 import works.weave.socks.orders.repositories.CustomerOrderRepository;
+import works.weave.socks.orders.resources.OrderHistoryResource;
+import works.weave.socks.orders.resources.OrderSummaryResource;
+import works.weave.socks.orders.values.OrderCursor;
+import works.weave.socks.orders.values.OrderFields;
+import works.weave.socks.orders.values.OrderHistoryFilter;
+import works.weave.socks.orders.values.OrderStatus;
 
 /**
  * Service layer for CustomerOrder operations
- * Tracing is automatically handled by RepositoryTracingAspect
+ * Every MongoDB command it issues is timed by MongoDriverMetrics and traced by the driver command observations
+ * configured in MongoConfiguration
  */
 @Service
 public class OrderService {
     private static final Logger LOG = LoggerFactory.getLogger(OrderService.class);
 
+    // Serves the customer order search and the keyset pages over it, newest first with the id as tie-breaker
+    private static final String CUSTOMER_HISTORY_INDEX = "customerId_date_id";
+
+    // Only the fields the history views show; the item count is computed by the server instead of shipping the items
+    private static final ProjectionOperation SUMMARY = Aggregation.project("date", "total", "status")
+            .and(ArrayOperators.Size.lengthOfArray(ConditionalOperators.ifNull("items").then(Collections.emptyList())))
+            .as("itemCount");
+
     @Autowired
     private CustomerOrderRepository repository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectProvider<OrderBatchWriter> batchWriter;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(CustomerOrder.class).ensureIndex(new Index()
+                    .on("customerId", Sort.Direction.ASC)
+                    .on("date", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named(CUSTOMER_HISTORY_INDEX));
+            LOG.info("[OrderService] Customer order history index ensured: {}", CUSTOMER_HISTORY_INDEX);
+        } catch (RuntimeException e) {
+            LOG.error("[OrderService] Unable to create customer order history index", e);
+        }
+    }
+
     /**
      * Save order to MongoDB
      */
@@ -35,6 +90,64 @@ public class OrderService {
         return saved;
     }
 
+    /**
+     * Save order to MongoDB, through the group-commit writer when it is enabled and the order is new.
+     * Otherwise the order is saved on the calling thread and the returned future is already complete.
+     */
+    public CompletableFuture<CustomerOrder> saveOrderAsync(CustomerOrder order) {
+        OrderBatchWriter writer = batchWriter.getIfAvailable();
+        if (writer == null || order.getId() != null) {
+            try {
+                return CompletableFuture.completedFuture(saveOrder(order));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        LOG.info("[OrderService] Queueing order for batched insert for customer: {}",
+                order.getCustomer() != null ? order.getCustomer().getId() : "unknown");
+        return writer.insert(order);
+    }
+
+    /**
+     * Move an order to a new status without rewriting the rest of the document.
+     * A failed order is never resumed, so its stored submission is dropped.
+     */
+    public void updateStatus(String orderId, OrderStatus status, String message) {
+        LOG.info("[OrderService] Updating order {} to status {}", orderId, status);
+
+        Update update = Update.update("status", status).set("statusMessage", message);
+        if (status == OrderStatus.FAILED) {
+            update.unset("submission");
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(orderId)), update, CustomerOrder.class);
+    }
+
+    /**
+     * Take over a PENDING order for processing if it still carries the lease it was stored or last claimed with.
+     * Returns false if another instance has claimed it since.
+     */
+    public boolean claimPending(String orderId, Date lease) {
+        return mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(orderId).and("status").is(OrderStatus.PENDING).and("date").is(lease)),
+                Update.update("date", new Date()),
+                CustomerOrder.class).getModifiedCount() > 0;
+    }
+
+    /**
+     * Claim one PENDING or PAID order whose lease is older than cutoff, renewing the lease.
+     * Only orders accepted for background processing carry a submission, and the query is served by a partial index
+     * over just those orders.
+     */
+    public Optional<CustomerOrder> claimStale(Date cutoff) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                Query.query(Criteria.where("submission").exists(true)
+                        .and("date").lt(cutoff)
+                        .and("status").in(OrderStatus.PENDING, OrderStatus.PAID)),
+                Update.update("date", new Date()),
+                FindAndModifyOptions.options().returnNew(true),
+                CustomerOrder.class));
+    }
+
     /**
      * Find order by ID
      */
@@ -47,6 +160,34 @@ public class OrderService {
         return result;
     }
 
+    /**
+     * Find order by ID, reading only the given fields
+     */
+    public Optional<CustomerOrder> findById(String orderId, OrderFields fields) {
+        LOG.info("[OrderService] Finding order by ID: {}, fields={}", orderId, fields);
+
+        Query query = Query.query(Criteria.where("_id").is(orderId));
+        fields.project(query.fields());
+        CustomerOrder order = mongoTemplate.findOne(query, CustomerOrder.class);
+
+        LOG.info("[OrderService] Order findById completed: found={}", order != null);
+        return Optional.ofNullable(order);
+    }
+
+    /**
+     * Summary of one order, read without the customer, address, card and items
+     */
+    public Optional<OrderSummaryResource> findSummaryById(String orderId) {
+        LOG.info("[OrderService] Finding order summary by ID: {}", orderId);
+
+        OrderSummaryResource summary = mongoTemplate.aggregate(Aggregation.newAggregation(CustomerOrder.class,
+                        Aggregation.match(Criteria.where("_id").is(orderId)), SUMMARY),
+                OrderSummaryResource.class).getUniqueMappedResult();
+
+        LOG.info("[OrderService] Order summary findById completed: found={}", summary != null);
+        return Optional.ofNullable(summary);
+    }
+
     /**
      * Find orders by customer ID
      */
@@ -60,7 +201,103 @@ public class OrderService {
     }
 
     /**
-     * Find all orders
+     * One page of a customer's orders, newest first, starting after the cursor (from the newest without one).
+     * The page is found by seeking in the customerId/date index, so its cost does not grow with the page number.
+     * With fields, only those fields (and the date the cursor needs) are read from MongoDB.
+     */
+    public OrderHistoryResource<CustomerOrder> findCustomerHistory(OrderHistoryFilter filter, OrderFields fields,
+                                                                   OrderCursor after, int size) {
+        LOG.info("[OrderService] Finding order history page: {}, fields={}, after={}, size={}", filter, fields, after, size);
+
+        Query query = Query.query(historyCriteria(filter, after))
+                .with(Sort.by(Sort.Direction.DESC, "date", "_id"))
+                .limit(size + 1);
+        if (fields != null) {
+            fields.project(query.fields());
+            query.fields().include("date");
+        }
+        OrderHistoryResource<CustomerOrder> page = page(mongoTemplate.find(query, CustomerOrder.class), size,
+                CustomerOrder::getDate, CustomerOrder::getId);
+        LOG.info("[OrderService] Found {} orders, more={}", page.getOrders().size(), page.getNext() != null);
+        return page;
+    }
+
+    /**
+     * The same page as findCustomerHistory, as summaries projected by the server
+     */
+    public OrderHistoryResource<OrderSummaryResource> findCustomerSummaries(OrderHistoryFilter filter,
+                                                                            OrderCursor after, int size) {
+        LOG.info("[OrderService] Finding order summary page: {}, after={}, size={}", filter, after, size);
+
+        TypedAggregation<CustomerOrder> aggregation = Aggregation.newAggregation(CustomerOrder.class,
+                Aggregation.match(historyCriteria(filter, after)),
+                Aggregation.sort(Sort.by(Sort.Direction.DESC, "date", "_id")),
+                Aggregation.limit(size + 1),
+                SUMMARY);
+        OrderHistoryResource<OrderSummaryResource> page = page(
+                mongoTemplate.aggregate(aggregation, OrderSummaryResource.class).getMappedResults(), size,
+                OrderSummaryResource::getDate, OrderSummaryResource::getId);
+        LOG.info("[OrderService] Found {} order summaries, more={}", page.getOrders().size(), page.getNext() != null);
+        return page;
+    }
+
+    // Pages are read one order past the size; if it is there, the last order of the page is the next cursor
+    private static <T> OrderHistoryResource<T> page(List<T> orders, int size, Function<T, Date> date,
+                                                    Function<T, String> id) {
+        String next = null;
+        if (orders.size() > size) {
+            orders = orders.subList(0, size);
+            T last = orders.get(size - 1);
+            next = new OrderCursor(date.apply(last), id.apply(last)).encode();
+        }
+        return new OrderHistoryResource<>(orders, next);
+    }
+
+    /**
+     * Number of a customer's orders matching the filter, counted without loading them
+     */
+    public long countCustomerHistory(OrderHistoryFilter filter) {
+        LOG.info("[OrderService] Counting order history: {}", filter);
+
+        long count = mongoTemplate.count(Query.query(historyCriteria(filter, null)), CustomerOrder.class);
+
+        LOG.info("[OrderService] Order history count: {}", count);
+        return count;
+    }
+
+    private static Criteria historyCriteria(OrderHistoryFilter filter, OrderCursor after) {
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("customerId").is(filter.getCustomerId()));
+        if (filter.getFrom() != null || filter.getTo() != null) {
+            Criteria date = Criteria.where("date");
+            if (filter.getFrom() != null) {
+                date.gte(filter.getFrom());
+            }
+            if (filter.getTo() != null) {
+                date.lt(filter.getTo());
+            }
+            criteria.add(date);
+        }
+        if (filter.getMinTotal() != null || filter.getMaxTotal() != null) {
+            Criteria total = Criteria.where("total");
+            if (filter.getMinTotal() != null) {
+                total.gte(filter.getMinTotal());
+            }
+            if (filter.getMaxTotal() != null) {
+                total.lte(filter.getMaxTotal());
+            }
+            criteria.add(total);
+        }
+        if (after != null) {
+            criteria.add(new Criteria().orOperator(
+                    Criteria.where("date").lt(after.getDate()),
+                    Criteria.where("date").is(after.getDate()).and("_id").lt(after.getId())));
+        }
+        return new Criteria().andOperator(criteria);
+    }
+
+    /**
+     * Find all orders. This loads the whole collection; bulk reads should use OrderExportService instead.
      */
     public List<CustomerOrder> findAllOrders() {
         LOG.info("[OrderService] Finding all orders");
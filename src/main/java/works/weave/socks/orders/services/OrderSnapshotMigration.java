@@ -0,0 +1,127 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts stored orders to the configured schema: to snapshot hashes when orders.snapshots.enabled is set, back to
+ * embedded parts when it is not. Run it once by starting the service with orders.snapshots.migrate=true; it scans
+ * the whole orders collection, so it runs as a BackgroundMigration: after startup, on one instance, and only until it
+ * has completed for the configured schema. It is resumable and converts only orders still in the other form.
+ */
+@Service
+public class OrderSnapshotMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderSnapshotMigration.class);
+
+    static final String NAME = "order-snapshots";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderSnapshotStore snapshotStore;
+
+    @Value("${orders.snapshots.migrate:false}")
+    private boolean migrate;
+
+    @Value("${orders.snapshots.migration-batch-size:500}")
+    private int batchSize;
+
+    @Value("${orders.snapshots.migration-lease:PT5M}")
+    private Duration lease;
+
+    private BackgroundMigration migration;
+
+    @PostConstruct
+    public void init() {
+        migration = new BackgroundMigration(mongoTemplate, NAME, snapshotStore.isEnabled() ? "snapshots" : "embedded",
+                lease);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (migrate) {
+            migration.start(this::migrate);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        migration.stop();
+    }
+
+    /**
+     * @return the number of orders converted
+     */
+    long migrate() {
+        boolean toSnapshots = snapshotStore.isEnabled();
+        BsonType from = toSnapshots ? BsonType.DOCUMENT : BsonType.STRING;
+        List<Bson> pending = new ArrayList<>();
+        for (String part : OrderSnapshotStore.PARTS) {
+            pending.add(Filters.type(part, from));
+        }
+        LOG.info("Order snapshot migration started: converting orders to {}", toSnapshots ? "snapshots" : "embedded parts");
+
+        MongoCollection<Document> orders = mongoTemplate.getCollection(mongoTemplate.getCollectionName(CustomerOrder.class));
+        long migrated = 0;
+        try (MongoCursor<Document> cursor = orders.find(Filters.or(pending))
+                .projection(Projections.include(OrderSnapshotStore.PARTS))
+                .batchSize(batchSize)
+                .iterator()) {
+            List<WriteModel<Document>> updates = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                Document order = cursor.next();
+                if (toSnapshots ? snapshotStore.dehydrate(order) : snapshotStore.hydrate(order)) {
+                    List<Bson> parts = new ArrayList<>();
+                    for (String part : OrderSnapshotStore.PARTS) {
+                        if (order.containsKey(part)) {
+                            parts.add(Updates.set(part, order.get(part)));
+                        }
+                    }
+                    updates.add(new UpdateOneModel<>(Filters.eq("_id", order.get("_id")), Updates.combine(parts)));
+                }
+                if (updates.size() == batchSize) {
+                    migrated += orders.bulkWrite(updates).getModifiedCount();
+                    updates.clear();
+                    LOG.info("Order snapshot migration: {} orders converted", migrated);
+                    if (!migration.proceed()) {
+                        LOG.info("Order snapshot migration stopped after {} orders, the next start resumes it", migrated);
+                        return migrated;
+                    }
+                }
+            }
+            if (!updates.isEmpty()) {
+                migrated += orders.bulkWrite(updates).getModifiedCount();
+            }
+            migration.complete();
+            LOG.info("Order snapshot migration completed: {} orders converted", migrated);
+        } catch (RuntimeException e) {
+            // Orders in either form still read; the lease expires and the next start tries again
+            LOG.error("Order snapshot migration stopped after {} orders", migrated, e);
+        }
+        return migrated;
+    }
+}
@@ -0,0 +1,203 @@
+package works.weave.socks.orders.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional storage schema that keeps each distinct customer, address and card snapshot once.
+ * With orders.snapshots.enabled, those parts of an order are written to the orderSnapshots collection keyed by the
+ * SHA-256 of their BSON, and the order stores the hash in their place. Orders of a repeat customer then share one
+ * copy of each part instead of embedding it hundreds of times.
+ * <p>
+ * Reads put the parts back before the document is mapped, from an in-process cache of the immutable snapshots.
+ * This happens whether or not the schema is enabled, so orders in either form always read, and
+ * OrderSnapshotMigration can move stored orders between them.
+ * <p>
+ * Saves run in BeforeSaveEvent, on the saving thread: the parts not in the cache yet are upserted with one unordered
+ * bulk write before the order is stored, so a save costs one more round trip on a miss. The batch writer pays it
+ * on its flusher thread once per order with a new part.
+ */
+@Component
+public class OrderSnapshotStore extends AbstractMongoEventListener<CustomerOrder> {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderSnapshotStore.class);
+
+    public static final String COLLECTION = "orderSnapshots";
+
+    // The order fields held as snapshots
+    public static final String[] PARTS = {"customer", "address", "card"};
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${orders.snapshots.enabled:false}")
+    private boolean enabled;
+
+    @Value("${orders.snapshots.cache-size:100000}")
+    private long cacheSize;
+
+    // Encoded snapshots: compact, and immutable, so every read decodes its own copy
+    private Cache<String, RawBsonDocument> cache;
+
+    private Codec<Document> codec;
+
+    private Counter stored;
+
+    private Counter reused;
+
+    @PostConstruct
+    public void init() {
+        // Snapshots never change once stored, so entries only leave the cache by size
+        cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "orders.snapshots");
+        codec = mongoTemplate.getDb().getCodecRegistry().get(Document.class);
+        stored = snapshotCounter("stored");
+        reused = snapshotCounter("reused");
+        LOG.info("Order snapshots: enabled={}, cacheSize={}", enabled, cacheSize);
+    }
+
+    private Counter snapshotCounter(String outcome) {
+        return Counter.builder("orders.snapshots.writes")
+                .description("Order parts written as snapshots, by whether the snapshot was new")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<CustomerOrder> event) {
+        if (enabled && event.getDocument() != null) {
+            dehydrate(event.getDocument());
+        }
+    }
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<CustomerOrder> event) {
+        if (event.getDocument() != null) {
+            hydrate(event.getDocument());
+        }
+    }
+
+    /**
+     * Replace the embedded parts of a stored order with the hashes of their snapshots, storing new snapshots first
+     *
+     * @return whether the order had an embedded part
+     */
+    public boolean dehydrate(Document order) {
+        boolean changed = false;
+        Map<String, RawBsonDocument> missing = new LinkedHashMap<>();
+        List<WriteModel<Document>> upserts = new ArrayList<>(PARTS.length);
+        for (String part : PARTS) {
+            if (order.get(part) instanceof Document) {
+                RawBsonDocument snapshot = new RawBsonDocument(order.get(part, Document.class), codec);
+                String hash = hash(part, snapshot);
+                order.put(part, hash);
+                changed = true;
+                if (cache.getIfPresent(hash) == null) {
+                    missing.put(hash, snapshot);
+                    // Upsert, so concurrent writers of the same snapshot all succeed and store it once
+                    upserts.add(new UpdateOneModel<>(Filters.eq("_id", hash),
+                            Updates.combine(Updates.setOnInsert("part", part), Updates.setOnInsert("data", snapshot),
+                                    Updates.setOnInsert("created", new Date())),
+                            new UpdateOptions().upsert(true)));
+                } else {
+                    reused.increment();
+                }
+            }
+        }
+        if (!upserts.isEmpty()) {
+            int inserted = snapshots().bulkWrite(upserts, new BulkWriteOptions().ordered(false)).getUpserts().size();
+            stored.increment(inserted);
+            reused.increment(upserts.size() - inserted);
+            cache.putAll(missing);
+        }
+        return changed;
+    }
+
+    /**
+     * Replace snapshot hashes in a stored order with the snapshots
+     *
+     * @return whether the order had a snapshot hash
+     * @throws DataRetrievalFailureException when a referenced snapshot does not exist
+     */
+    public boolean hydrate(Document order) {
+        boolean changed = false;
+        for (String part : PARTS) {
+            if (order.get(part) instanceof String) {
+                order.put(part, load(order.getString(part)));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private Document load(String hash) {
+        RawBsonDocument snapshot = cache.get(hash, key -> {
+            Document document = snapshots().find(Filters.eq("_id", key)).first();
+            if (document == null) {
+                throw new DataRetrievalFailureException("Order snapshot " + key + " does not exist");
+            }
+            return new RawBsonDocument(document.get("data", Document.class), codec);
+        });
+        return snapshot.decode(codec);
+    }
+
+    static String hash(String part, RawBsonDocument snapshot) {
+        // The converter writes properties in a fixed order, so equal parts encode to the same bytes
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update(snapshot.getByteBuffer().asNIO());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MongoCollection<Document> snapshots() {
+        return mongoTemplate.getCollection(COLLECTION);
+    }
+}
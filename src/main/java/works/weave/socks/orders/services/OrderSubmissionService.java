@@ -0,0 +1,238 @@
+package works.weave.socks.orders.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+import works.weave.socks.orders.controllers.OrdersController.OrderQueueFullException;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.resources.OrderStatusResource;
+import works.weave.socks.orders.values.OrderStatus;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accept-then-process order submission.
+ * An order is stored as PENDING, together with the request it was submitted with, and handed to a bounded worker
+ * pool that runs the pipeline; a full queue is reported to the client instead of holding its connection.
+ * The order's date is its processing lease: a worker claims the order before starting it, and a recovery sweep on
+ * every instance takes over orders whose lease is older than orders.submission.recovery.stale-after, for example
+ * because the instance that accepted them stopped. A stale PENDING order is processed again; a stale PAID order
+ * is failed rather than charged twice.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.submission.async.enabled", havingValue = "true")
+public class OrderSubmissionService {
+    private static final Logger LOG = LoggerFactory.getLogger(OrderSubmissionService.class);
+
+    // Orders accepted for background processing and not finished yet, oldest lease first
+    private static final String SUBMISSION_INDEX = "submission_date";
+
+    // Orders claimed per sweep, so one instance does not take over everything another one left behind
+    private static final int RECOVERY_BATCH = 100;
+
+    @Autowired
+    private OrderPipelineService orderPipelineService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    @Qualifier("orderWorkerExecutor")
+    private Executor orderWorkerExecutor;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${orders.submission.recovery.stale-after:10m}")
+    private Duration staleAfter;
+
+    @Value("${orders.submission.recovery.interval:1m}")
+    private Duration recoveryInterval;
+
+    @Value("${orders.submission.status-poll-interval:500ms}")
+    private Duration statusPollInterval;
+
+    // Orders being processed by this instance, used to answer long-poll requests as soon as they finish
+    private final Map<String, CompletableFuture<CustomerOrder>> inFlight = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService recovery;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRecovery() {
+        try {
+            mongoTemplate.indexOps(CustomerOrder.class).ensureIndex(new Index()
+                    .on("date", Sort.Direction.ASC)
+                    .partial(PartialIndexFilter.of(Criteria.where("submission").exists(true)))
+                    .named(SUBMISSION_INDEX));
+        } catch (RuntimeException e) {
+            LOG.error("Unable to create submitted order index", e);
+        }
+        recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recovery.scheduleWithFixedDelay(this::recoverStale, recoveryInterval.toMillis(), recoveryInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        LOG.info("Recovering orders left PENDING or PAID for more than {} every {}", staleAfter, recoveryInterval);
+    }
+
+    @PreDestroy
+    public void stopRecovery() {
+        if (recovery != null) {
+            recovery.shutdownNow();
+        }
+    }
+
+    /**
+     * Store the order as PENDING and queue it for processing
+     */
+    public CustomerOrder submit(NewOrderResource item) {
+        CustomerOrder pending = new CustomerOrder();
+        pending.setStatus(OrderStatus.PENDING);
+        pending.setSubmission(item);
+        pending = orderService.saveOrder(pending);
+        String orderId = pending.getId();
+        Date lease = pending.getDate();
+
+        CompletableFuture<CustomerOrder> done = new CompletableFuture<>();
+        inFlight.put(orderId, done);
+        try {
+            orderWorkerExecutor.execute(() -> {
+                if (orderService.claimPending(orderId, lease)) {
+                    run(item, orderId, done);
+                } else {
+                    LOG.warn("Order {} was taken over by another instance before it started", orderId);
+                    inFlight.remove(orderId);
+                    done.cancel(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Order queue is full, rejecting order {}", orderId);
+            inFlight.remove(orderId);
+            orderService.deleteOrder(orderId);
+            throw new OrderQueueFullException("Order queue is full, retry later.");
+        }
+
+        LOG.info("Order {} accepted for background processing", orderId);
+        return pending;
+    }
+
+    private void run(NewOrderResource item, String orderId, CompletableFuture<CustomerOrder> done) {
+        try {
+            done.complete(orderPipelineService.process(item, orderId).join());
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            LOG.error("Background processing failed for order {}: {}", orderId, cause.getMessage());
+            orderService.updateStatus(orderId, OrderStatus.FAILED, cause.getMessage());
+            done.completeExceptionally(cause);
+        } finally {
+            inFlight.remove(orderId);
+        }
+    }
+
+    /**
+     * Take over orders whose lease has run out: resume PENDING ones, fail PAID ones
+     */
+    void recoverStale() {
+        try {
+            Date cutoff = new Date(System.currentTimeMillis() - staleAfter.toMillis());
+            for (int i = 0; i < RECOVERY_BATCH; i++) {
+                Optional<CustomerOrder> claimed = orderService.claimStale(cutoff);
+                if (claimed.isEmpty()) {
+                    return;
+                }
+                recover(claimed.get());
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Order recovery sweep failed", e);
+        }
+    }
+
+    private void recover(CustomerOrder order) {
+        String orderId = order.getId();
+        if (order.getStatus() == OrderStatus.PAID) {
+            // Payment was authorised but the order was never shipped; running the pipeline again would charge twice
+            LOG.error("Order {} was left PAID by a stopped instance, failing it for manual follow-up", orderId);
+            orderService.updateStatus(orderId, OrderStatus.FAILED,
+                    "Processing was interrupted after payment was authorised");
+            return;
+        }
+
+        LOG.warn("Resuming order {} left PENDING by a stopped instance", orderId);
+        CompletableFuture<CustomerOrder> done = new CompletableFuture<>();
+        inFlight.put(orderId, done);
+        try {
+            orderWorkerExecutor.execute(() -> run(order.getSubmission(), orderId, done));
+        } catch (RejectedExecutionException e) {
+            // Leave it claimed; it is picked up again once the lease runs out
+            LOG.warn("Order queue is full, deferring recovery of order {}", orderId);
+            inFlight.remove(orderId);
+        }
+    }
+
+    /**
+     * Current status of an order, waiting up to waitSeconds for it to finish.
+     * An order processed here completes the wait as soon as it finishes; one accepted or resumed by another
+     * instance is polled in the database every orders.submission.status-poll-interval.
+     */
+    public CompletableFuture<Optional<OrderStatusResource>> status(String orderId, long waitSeconds) {
+        CompletableFuture<CustomerOrder> done = inFlight.get(orderId);
+        if (waitSeconds <= 0) {
+            return CompletableFuture.completedFuture(readStatus(orderId));
+        }
+        if (done == null) {
+            return poll(orderId, System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds));
+        }
+        return done.copy()
+                .completeOnTimeout(null, waitSeconds, TimeUnit.SECONDS)
+                .handleAsync((order, error) -> readStatus(orderId), taskExecutor);
+    }
+
+    private CompletableFuture<Optional<OrderStatusResource>> poll(String orderId, long deadline) {
+        Optional<OrderStatusResource> status = readStatus(orderId);
+        long left = deadline - System.nanoTime();
+        if (status.isEmpty() || isFinished(status.get().getStatus()) || left <= 0) {
+            return CompletableFuture.completedFuture(status);
+        }
+        Executor delayed = CompletableFuture.delayedExecutor(Math.min(left, statusPollInterval.toNanos()),
+                TimeUnit.NANOSECONDS, taskExecutor);
+        return CompletableFuture.supplyAsync(() -> poll(orderId, deadline), delayed).thenCompose(next -> next);
+    }
+
+    private static boolean isFinished(OrderStatus status) {
+        return status == OrderStatus.SHIPPED || status == OrderStatus.FAILED;
+    }
+
+    private Optional<OrderStatusResource> readStatus(String orderId) {
+        return orderService.findById(orderId).map(OrderStatusResource::new);
+    }
+}
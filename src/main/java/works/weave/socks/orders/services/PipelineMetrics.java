@@ -0,0 +1,94 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import works.weave.socks.orders.controllers.OrdersController.DownstreamUnavailableException;
+import works.weave.socks.orders.controllers.OrdersController.InvalidOrderException;
+import works.weave.socks.orders.controllers.OrdersController.PaymentDeclinedException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Latency of each order pipeline stage as orders.pipeline.stage{stage,outcome}, with percentile histograms.
+ * A stage is timed from when it could start to when its result (or failure) is known, so the fetch stages
+ * include time queued behind the executor and the downstream guards.
+ */
+@Component
+public class PipelineMetrics {
+    public static final String VALIDATE = "validate";
+    public static final String ITEMS = "items";
+    public static final String ADDRESS = "address";
+    public static final String CARD = "card";
+    public static final String CUSTOMER = "customer";
+    public static final String PAYMENT = "payment";
+    public static final String SHIPMENT = "shipment";
+    public static final String BUILD = "build";
+    public static final String SAVE = "save";
+
+    private final MeterRegistry registry;
+
+    // stage -> outcome -> timer, so recording does not go through the registry lookup
+    private final Map<String, Map<String, Timer>> timers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Time future from now until it completes
+     */
+    public <T> CompletableFuture<T> time(String stage, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        return future.whenComplete((value, error) -> record(stage, start, error));
+    }
+
+    public void record(String stage, long startNanos, Throwable error) {
+        timer(stage, outcome(error)).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String stage, String outcome) {
+        return timers.computeIfAbsent(stage, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(outcome, o -> Timer.builder("orders.pipeline.stage")
+                        .description("Order pipeline stage latency")
+                        .tag("stage", stage)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofNanos(10_000))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry));
+    }
+
+    private static String outcome(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause == null) {
+            return "success";
+        }
+        if (cause instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (cause instanceof CancellationException) {
+            return "cancelled";
+        }
+        if (cause instanceof DownstreamUnavailableException) {
+            return "unavailable";
+        }
+        if (cause instanceof InvalidOrderException || cause instanceof PaymentDeclinedException) {
+            return "rejected";
+        }
+        return "error";
+    }
+}
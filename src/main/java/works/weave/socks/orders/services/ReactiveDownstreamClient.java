@@ -0,0 +1,216 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.hateoas.MediaTypes.HAL_JSON;
+
+/**
+ * Non-blocking downstream client on WebClient. No thread is held while a request is in flight.
+ * Futures are completed with the caller's trace context restored, so dependent pipeline stages
+ * behave as they do with the blocking client. Bodies are read and written with the JsonCodecRegistry codecs.
+ */
+@Service
+@ConditionalOnProperty(name = "http.client", havingValue = "webclient")
+public class ReactiveDownstreamClient implements DownstreamClient {
+    private final Logger LOG = LoggerFactory.getLogger(getClass());
+
+    private final WebClient webClient;
+
+    private final ObservationRegistry observationRegistry;
+
+    private final JsonCodecRegistry codecs;
+
+    @Autowired
+    public ReactiveDownstreamClient(WebClient downstreamWebClient, ObservationRegistry observationRegistry,
+                                    JsonCodecRegistry codecs) {
+        this.webClient = downstreamWebClient;
+        this.observationRegistry = observationRegistry;
+        this.codecs = codecs;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getResource(URI url, ParameterizedTypeReference<T> type) {
+        LOG.info("[ReactiveDownstreamClient] GET request starting - URL: {}", url);
+        Mono<T> response = webClient.get()
+                .uri(url)
+                .accept(HAL_JSON)
+                .retrieve()
+                .bodyToMono(DataBuffer.class)
+                .handle((buffer, sink) -> decode(buffer, type, HAL_JSON, sink));
+        return toFuture(response, "GET", url);
+    }
+
+    @Override
+    public <T> CompletableFuture<ResponseEntity<T>> getResourceEntity(URI url, ParameterizedTypeReference<T> type,
+                                                                      String ifNoneMatch) {
+        LOG.info("[ReactiveDownstreamClient] GET request starting - URL: {}, If-None-Match: {}", url, ifNoneMatch);
+        WebClient.RequestHeadersSpec<?> request = webClient.get()
+                .uri(url)
+                .accept(HAL_JSON);
+        if (ifNoneMatch != null) {
+            request = request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        Mono<ResponseEntity<T>> response = request.retrieve()
+                .toEntity(DataBuffer.class)
+                .handle((entity, sink) -> {
+                    if (entity.getBody() == null) {
+                        sink.next(new ResponseEntity<>(entity.getHeaders(), entity.getStatusCode()));
+                        return;
+                    }
+                    try (InputStream in = entity.getBody().asInputStream(true)) {
+                        sink.next(new ResponseEntity<>(codecs.read(in, type, HAL_JSON), entity.getHeaders(),
+                                entity.getStatusCode()));
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                });
+        return toFuture(response, "GET", url);
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> getDataList(URI url, ParameterizedTypeReference<List<T>> type) {
+        LOG.info("[ReactiveDownstreamClient] GET DATA LIST request starting - URL: {}", url);
+        Mono<List<T>> response = webClient.get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToMono(DataBuffer.class)
+                .handle((buffer, sink) -> decode(buffer, type, MediaType.APPLICATION_JSON, sink));
+        return toFuture(response, "GET DATA LIST", url);
+    }
+
+    /**
+     * The decoder reads the body as it arrives through a blocking InputStream, so it runs on boundedElastic.
+     * Closing the stream early (a decoder limit) cancels the rest of the download.
+     */
+    @Override
+    public <T> CompletableFuture<T> getStreamed(URI url, MediaType accept, StreamDecoder<T> decoder) {
+        LOG.info("[ReactiveDownstreamClient] GET STREAMED request starting - URL: {}", url);
+        Flux<DataBuffer> body = webClient.get()
+                .uri(url)
+                .accept(accept)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+        Mono<T> response = Mono.deferContextual(context -> Mono.fromCallable(() -> {
+                    try (InputStream in = DataBufferUtils.subscriberInputStream(body.contextWrite(context), 16)) {
+                        return decoder.decode(in);
+                    }
+                }))
+                .subscribeOn(Schedulers.boundedElastic());
+        return toFuture(response, "GET STREAMED", url);
+    }
+
+    @Override
+    public <T, B> CompletableFuture<T> postResource(URI uri, B body, ParameterizedTypeReference<T> returnType) {
+        LOG.info("[ReactiveDownstreamClient] POST request starting - URI: {}", uri);
+        LOG.debug("[ReactiveDownstreamClient] POST request body: {}", body);
+        byte[] json;
+        try {
+            json = codecs.write(body);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Mono<T> response = webClient.post()
+                .uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(json)
+                .retrieve()
+                .bodyToMono(DataBuffer.class)
+                .handle((buffer, sink) -> decode(buffer, returnType, MediaType.APPLICATION_JSON, sink));
+        return toFuture(response, "POST", uri);
+    }
+
+    // An empty result completes the Mono empty, which the future reports as null like RestTemplate
+    private <T> void decode(DataBuffer buffer, ParameterizedTypeReference<T> type, MediaType mediaType,
+                            SynchronousSink<T> sink) {
+        try (InputStream in = buffer.asInputStream(true)) {
+            T value = codecs.read(in, type, mediaType);
+            if (value != null) {
+                sink.next(value);
+            }
+        } catch (IOException e) {
+            sink.error(e);
+        }
+    }
+
+    /**
+     * Subscribe with the current observation as parent and complete the future in the caller's context.
+     * Completing the future before the response arrives (a cancel, or a timeout applied by the caller) cancels the
+     * HTTP exchange, so it does not keep its connection until the server answers.
+     */
+    private <T> CompletableFuture<T> toFuture(Mono<T> response, String operation, URI uri) {
+        long startTime = System.currentTimeMillis();
+        @SuppressWarnings("deprecation")
+        ContextSnapshot snapshot = ContextSnapshot.captureAll();
+        Observation parent = observationRegistry.getCurrentObservation();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        AtomicBoolean finished = new AtomicBoolean();
+
+        Disposable subscription = response
+                .contextWrite(parent != null ? Context.of(ObservationThreadLocalAccessor.KEY, parent) : Context.empty())
+                .subscribe(
+                        body -> {
+                            finished.set(true);
+                            try (ContextSnapshot.Scope ignored = snapshot.setThreadLocals()) {
+                                LOG.info("[ReactiveDownstreamClient] {} request completed - URI: {}, Duration: {}ms",
+                                        operation, uri, System.currentTimeMillis() - startTime);
+                                LOG.debug("[ReactiveDownstreamClient] Response body: {}", body);
+                                future.complete(body);
+                            }
+                        },
+                        error -> {
+                            finished.set(true);
+                            try (ContextSnapshot.Scope ignored = snapshot.setThreadLocals()) {
+                                LOG.error("[ReactiveDownstreamClient] {} request failed - URI: {}, Duration: {}ms, Error: {}",
+                                        operation, uri, System.currentTimeMillis() - startTime, error.getMessage(), error);
+                                future.completeExceptionally(error);
+                            }
+                        },
+                        () -> {
+                            finished.set(true);
+                            // Empty body: mirror RestTemplate, which returns null
+                            if (!future.isDone()) {
+                                try (ContextSnapshot.Scope ignored = snapshot.setThreadLocals()) {
+                                    future.complete(null);
+                                }
+                            }
+                        });
+
+        future.whenComplete((body, error) -> {
+            if (!finished.get()) {
+                subscription.dispose();
+            }
+        });
+        return future;
+    }
+}
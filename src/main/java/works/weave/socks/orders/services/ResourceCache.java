@@ -0,0 +1,25 @@
+package works.weave.socks.orders.services;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cache in front of AsyncGetService.getResource for HAL resources that rarely change (customer, address, card).
+ * Enabled with http.cache.enabled; without an implementation every call goes to the downstream service.
+ */
+public interface ResourceCache {
+
+    /**
+     * Return the resource at url, using fetch to load or revalidate it.
+     * fetch is called with the cached ETag (or null) and may answer 304 Not Modified.
+     */
+    <T> CompletableFuture<T> get(URI url, ParameterizedTypeReference<T> type, ConditionalFetch<T> fetch);
+
+    @FunctionalInterface
+    interface ConditionalFetch<T> {
+        CompletableFuture<ResponseEntity<T>> fetch(String ifNoneMatch);
+    }
+}
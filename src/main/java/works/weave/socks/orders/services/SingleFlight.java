@@ -0,0 +1,118 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls for the same key into one in-flight call.
+ * The first caller starts the call; callers arriving before it completes share its result.
+ * Each caller gets its own dependent future, so a timeout or cancel on one does not affect the others;
+ * the shared call is cancelled only once every caller waiting for it has given up.
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter requests;
+
+    private final Counter collapsed;
+
+    public SingleFlight(String name, MeterRegistry registry) {
+        requests = Counter.builder(name + ".requests")
+                .description("Calls made through the single-flight layer")
+                .register(registry);
+        collapsed = Counter.builder(name + ".collapsed")
+                .description("Calls that joined an identical in-flight call instead of starting a new one")
+                .register(registry);
+        Gauge.builder(name + ".inflight", inFlight, ConcurrentHashMap::size)
+                .description("Distinct calls currently in flight")
+                .register(registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> call) {
+        requests.increment();
+        Flight<T> mine = new Flight<>();
+        Flight<T> shared = (Flight<T>) inFlight.putIfAbsent(key, mine);
+        while (shared != null) {
+            if (shared.join()) {
+                collapsed.increment();
+                return shared.follow(key);
+            }
+            // Every caller of that call gave up and it is being cancelled; start a fresh one
+            inFlight.remove(key, shared);
+            shared = (Flight<T>) inFlight.putIfAbsent(key, mine);
+        }
+
+        // The caller that starts the call counts as waiting too, so it cannot be abandoned before it starts
+        mine.join();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        mine.call = result;
+        result.whenComplete((value, error) -> {
+            // Remove before completing so a caller arriving afterwards starts a fresh call
+            inFlight.remove(key, mine);
+            if (error == null) {
+                mine.result.complete(value);
+            } else {
+                mine.result.completeExceptionally(error);
+            }
+        });
+        return mine.follow(key);
+    }
+
+    /**
+     * One shared call and the number of callers still waiting for it
+     */
+    private class Flight<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private volatile CompletableFuture<T> call;
+
+        // guarded by this
+        private int waiting;
+        private boolean abandoned;
+
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiting++;
+            return true;
+        }
+
+        /**
+         * A future for one caller. If it completes before the shared call (the caller timed out or cancelled) and
+         * no other caller is still waiting, the shared call is cancelled so it stops holding its thread and permit.
+         */
+        CompletableFuture<T> follow(String key) {
+            CompletableFuture<T> mine = result.copy();
+            mine.whenComplete((value, error) -> {
+                if (!result.isDone() && leave()) {
+                    inFlight.remove(key, this);
+                    CompletableFuture<T> started = call;
+                    if (started != null) {
+                        started.cancel(true);
+                    }
+                }
+            });
+            return mine;
+        }
+
+        private synchronized boolean leave() {
+            if (--waiting > 0) {
+                return false;
+            }
+            abandoned = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package works.weave.socks.orders.values;
+
+import works.weave.socks.orders.entities.Item;
+
+import java.util.List;
+
+/**
+ * Cart contents decoded in one pass, with the exact sum of quantity x unit price in cents
+ */
+public class CartItems {
+    private final List<Item> items;
+    private final long totalCents;
+
+    public CartItems(List<Item> items, long totalCents) {
+        this.items = items;
+        this.totalCents = totalCents;
+    }
+
+    @Override
+    public String toString() {
+        return "CartItems{" +
+                "items=" + items.size() +
+                ", totalCents=" + totalCents +
+                '}';
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public long getTotalCents() {
+        return totalCents;
+    }
+}
@@ -0,0 +1,15 @@
+package works.weave.socks.orders.values;
+
+/**
+ * Services called while processing an order. Each gets its own bulkhead and circuit breaker.
+ */
+public enum Downstream {
+    USER,
+    CARTS,
+    PAYMENT,
+    SHIPPING;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,59 @@
+package works.weave.socks.orders.values;
+
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in a customer's order history, newest first: the date and id of the last order returned.
+ * The token is opaque to clients.
+ */
+public class OrderCursor {
+    private final Date date;
+    private final String id;
+
+    public OrderCursor(Date date, String id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    public String encode() {
+        String position = date.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException for a token this class did not produce
+     */
+    public static OrderCursor decode(String token) {
+        String position = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = position.indexOf(':');
+        if (separator <= 0 || separator == position.length() - 1) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        // Compared with _id in the seek, where anything but an ObjectId would silently match the wrong orders
+        String id = position.substring(separator + 1);
+        if (!ObjectId.isValid(id)) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new OrderCursor(new Date(Long.parseLong(position.substring(0, separator))), id);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderCursor{" +
+                "date=" + date +
+                ", id=" + id +
+                '}';
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,89 @@
+package works.weave.socks.orders.values;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.data.mongodb.core.query.Field;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sparse fieldset for order reads (fields=id,date,total): only these top-level fields are read from MongoDB
+ * and written to the client. They are taken by GET /orders/{id}, customerIdPage and the export; the Spring Data REST
+ * collection at GET /orders and its other searches always return whole orders.
+ */
+public class OrderFields {
+    static final String FILTER = "orderFields";
+
+    private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("id", "customerId",
+            "customer", "address", "card", "items", "shipment", "date", "total", "status", "statusMessage"));
+
+    private final Set<String> names;
+
+    private final FilterProvider filters;
+
+    private OrderFields(Set<String> names) {
+        this.names = names;
+        this.filters = new SimpleFilterProvider().addFilter(FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(names));
+    }
+
+    // Mix-in that puts CustomerOrder under the filter; it is added to a copy of the mapper so other output is unchanged
+    @JsonFilter(FILTER)
+    private interface Filtered {
+    }
+
+    /**
+     * Copy of mapper whose writers can leave out CustomerOrder fields; they have to be made with writer(...)
+     */
+    public static ObjectMapper filtering(ObjectMapper mapper) {
+        return mapper.copy().addMixIn(CustomerOrder.class, Filtered.class);
+    }
+
+    /**
+     * @return null when no fields were asked for, meaning whole orders
+     * @throws IllegalArgumentException for a name that is not a CustomerOrder field
+     */
+    public static OrderFields parse(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return null;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (!NAMES.contains(trimmed)) {
+                throw new IllegalArgumentException("Unknown order field: " + trimmed + ", expected one of " + NAMES);
+            }
+            names.add(trimmed);
+        }
+        return new OrderFields(names);
+    }
+
+    /**
+     * Limit a query to these fields; the id is always read. Fields the caller needs itself, such as the keys of a
+     * page cursor, are added to the projection separately and left out again by the writer.
+     */
+    public void project(Field projection) {
+        names.forEach(projection::include);
+    }
+
+    /**
+     * Writer, from a mapper made by filtering, that writes orders, on their own or inside other values, with only
+     * these fields; the others are skipped rather than serialized and dropped
+     */
+    public ObjectWriter writer(ObjectWriter filtering) {
+        return filtering.with(filters);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(",", names);
+    }
+}
@@ -0,0 +1,54 @@
+package works.weave.socks.orders.values;
+
+import java.util.Date;
+
+/**
+ * Search over one customer's orders: placed in [from, to) and with a total in [minTotal, maxTotal].
+ * Bounds left null are open.
+ */
+public class OrderHistoryFilter {
+    private final String customerId;
+    private final Date from;
+    private final Date to;
+    private final Float minTotal;
+    private final Float maxTotal;
+
+    public OrderHistoryFilter(String customerId, Date from, Date to, Float minTotal, Float maxTotal) {
+        this.customerId = customerId;
+        this.from = from;
+        this.to = to;
+        this.minTotal = minTotal;
+        this.maxTotal = maxTotal;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderHistoryFilter{" +
+                "customerId=" + customerId +
+                ", from=" + from +
+                ", to=" + to +
+                ", minTotal=" + minTotal +
+                ", maxTotal=" + maxTotal +
+                '}';
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public Date getFrom() {
+        return from;
+    }
+
+    public Date getTo() {
+        return to;
+    }
+
+    public Float getMinTotal() {
+        return minTotal;
+    }
+
+    public Float getMaxTotal() {
+        return maxTotal;
+    }
+}
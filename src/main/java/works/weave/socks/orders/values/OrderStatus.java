@@ -0,0 +1,12 @@
+package works.weave.socks.orders.values;
+
+/**
+ * Lifecycle of an order accepted for background processing.
+ * Orders created synchronously are stored as SHIPPED.
+ */
+public enum OrderStatus {
+    PENDING,
+    PAID,
+    SHIPPED,
+    FAILED
+}
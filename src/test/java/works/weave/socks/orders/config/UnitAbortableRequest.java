@@ -0,0 +1,76 @@
+package works.weave.socks.orders.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitAbortableRequest {
+
+    @Test
+    public void abortBeforeRunSkipsTheCall() {
+        AbortableRequest request = new AbortableRequest();
+        AtomicBoolean called = new AtomicBoolean();
+        request.abort();
+        assertThrows(CancellationException.class, () -> request.run(() -> called.getAndSet(true)));
+        assertFalse(called.get());
+    }
+
+    @Test
+    public void abortWhileRunningCancelsTheAttachedRequestAndInterrupts() throws Exception {
+        AbortableRequest request = new AbortableRequest();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CountDownLatch sent = new CountDownLatch(1);
+        CompletableFuture<Object> call = CompletableFuture.supplyAsync(() -> {
+            try {
+                return request.run(() -> {
+                    AbortableRequest.attach(() -> {
+                        cancelled.set(true);
+                        return true;
+                    });
+                    sent.countDown();
+                    Thread.sleep(10_000);
+                    return "finished";
+                });
+            } catch (Exception e) {
+                return e;
+            }
+        });
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        request.abort();
+
+        assertInstanceOf(InterruptedException.class, call.get(5, TimeUnit.SECONDS));
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    public void abortAfterTheCallIsANoOpAndLeavesNoInterrupt() throws Exception {
+        AbortableRequest request = new AbortableRequest();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        assertEquals("ok", request.run(() -> {
+            AbortableRequest.attach(() -> {
+                cancelled.set(true);
+                return true;
+            });
+            return "ok";
+        }));
+        request.abort();
+        assertFalse(cancelled.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void requestsOutsideARunAreNotTracked() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AbortableRequest.attach(() -> {
+            cancelled.set(true);
+            return true;
+        });
+        assertFalse(cancelled.get());
+    }
+}
@@ -0,0 +1,56 @@
+package works.weave.socks.orders.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitExecutorHop {
+    // Records the hop each task is submitted under, as the task decorator reads it
+    private final List<String> submitted = new ArrayList<>();
+
+    private final Executor executor = task -> submitted.add(ExecutorHop.current());
+
+    @Test
+    public void tasksOutsideAHopAreOther() {
+        executor.execute(() -> {
+        });
+
+        assertEquals(List.of(ExecutorHop.OTHER), submitted);
+    }
+
+    @Test
+    public void nestedHopsRestoreTheOuterOne() {
+        ExecutorHop.during("payment", () -> {
+            executor.execute(() -> {
+            });
+            ExecutorHop.during("save", () -> {
+                executor.execute(() -> {
+                });
+                return null;
+            });
+            executor.execute(() -> {
+            });
+            return null;
+        });
+        executor.execute(() -> {
+        });
+
+        assertEquals(List.of("payment", "save", "payment", ExecutorHop.OTHER), submitted);
+    }
+
+    @Test
+    public void taggingExecutorNamesEveryTaskSubmittedThroughIt() {
+        Executor save = ExecutorHop.tagging("save", executor);
+
+        save.execute(() -> {
+        });
+        executor.execute(() -> {
+        });
+
+        assertEquals(List.of("save", ExecutorHop.OTHER), submitted);
+    }
+}
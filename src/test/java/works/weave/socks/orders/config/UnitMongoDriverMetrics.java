@@ -0,0 +1,101 @@
+package works.weave.socks.orders.config;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitMongoDriverMetrics {
+    private static final ConnectionDescription CONNECTION =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress("mongo", 27017)));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final MongoDriverMetrics metrics = new MongoDriverMetrics(registry, Duration.ofMillis(100));
+
+    private void run(int requestId, String json, long millis) {
+        BsonDocument command = BsonDocument.parse(json);
+        String name = command.getFirstKey();
+        metrics.commandStarted(new CommandStartedEvent(null, 1, requestId, CONNECTION, "data", name, command));
+        metrics.commandSucceeded(new CommandSucceededEvent(null, 1, requestId, CONNECTION, "data", name,
+                new BsonDocument(), Duration.ofMillis(millis).toNanos()));
+    }
+
+    @Test
+    public void collectionIsTheValueOfTheCommandName() {
+        assertEquals("customerOrder", MongoDriverMetrics.collection("find",
+                BsonDocument.parse("{find: 'customerOrder', filter: {customerId: 'c1'}}")));
+    }
+
+    @Test
+    public void getMoreNamesItsCollectionSeparately() {
+        assertEquals("customerOrder", MongoDriverMetrics.collection("getMore",
+                BsonDocument.parse("{getMore: {$numberLong: '42'}, collection: 'customerOrder', batchSize: 100}")));
+    }
+
+    @Test
+    public void commandsWithoutACollectionAreNone() {
+        assertEquals("none", MongoDriverMetrics.collection("ping", BsonDocument.parse("{ping: 1}")));
+    }
+
+    @Test
+    public void shapeKeepsFieldNamesAndDropsValues() {
+        String shape = MongoDriverMetrics.shape(BsonDocument.parse(
+                "{find: 'customerOrder', filter: {customerId: 'secret'}, sort: {date: -1}, limit: 20,"
+                        + " $db: 'data', lsid: {id: 1}}"));
+
+        assertEquals("{find, filter: [customerId], sort: [date], limit}", shape);
+        assertFalse(shape.contains("secret"));
+    }
+
+    @Test
+    public void shapeCountsArrayElements() {
+        assertEquals("{insert, ordered, documents: [3]}", MongoDriverMetrics.shape(BsonDocument.parse(
+                "{insert: 'customerOrder', ordered: false, documents: [{a: 1}, {a: 2}, {a: 3}]}")));
+    }
+
+    @Test
+    public void shapeOfGetMoreHasNoCursorId() {
+        assertEquals("{getMore, collection, batchSize}", MongoDriverMetrics.shape(BsonDocument.parse(
+                "{getMore: {$numberLong: '42'}, collection: 'customerOrder', batchSize: 100}")));
+    }
+
+    @Test
+    public void commandsAreTimedByCommandCollectionAndStatus() {
+        run(1, "{find: 'customerOrder', filter: {}}", 5);
+        run(2, "{find: 'customerOrder', filter: {}}", 5);
+        run(3, "{getMore: {$numberLong: '42'}, collection: 'customerOrder'}", 5);
+        BsonDocument insert = BsonDocument.parse("{insert: 'customerOrder', documents: []}");
+        metrics.commandStarted(new CommandStartedEvent(null, 1, 4, CONNECTION, "data", "insert", insert));
+        metrics.commandFailed(new CommandFailedEvent(null, 1, 4, CONNECTION, "data", "insert",
+                Duration.ofMillis(5).toNanos(), new IllegalStateException("duplicate key")));
+
+        assertEquals(2, registry.get("orders.mongodb.commands").tag("command", "find")
+                .tag("collection", "customerOrder").tag("status", "success").timer().count());
+        assertEquals(1, registry.get("orders.mongodb.commands").tag("command", "getMore")
+                .tag("collection", "customerOrder").timer().count());
+        assertEquals(1, registry.get("orders.mongodb.commands").tag("command", "insert")
+                .tag("status", "error").timer().count());
+        assertTrue(registry.find("orders.mongodb.commands.slow").counters().isEmpty());
+    }
+
+    @Test
+    public void slowCommandsAreCounted() {
+        run(1, "{find: 'customerOrder', filter: {}}", 150);
+        run(2, "{find: 'customerOrder', filter: {}}", 150);
+        run(3, "{find: 'customerOrder', filter: {}}", 5);
+
+        assertEquals(2.0, registry.get("orders.mongodb.commands.slow").tag("command", "find")
+                .tag("collection", "customerOrder").counter().count());
+    }
+}
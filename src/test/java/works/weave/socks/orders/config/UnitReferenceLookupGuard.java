@@ -0,0 +1,53 @@
+package works.weave.socks.orders.config;
+
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitReferenceLookupGuard {
+    private final ReferenceLookupGuard guard = new ReferenceLookupGuard(Set.of("address", "card"));
+
+    @Test
+    public void legacyReferenceIsAnsweredWithItsId() {
+        Document document = guard.fetch(new DBRef("address", "a1"));
+
+        assertEquals(new Document("_id", "a1"), document);
+    }
+
+    @Test
+    public void referenceIntoAnotherCollectionIsBlocked() {
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> guard.fetch(new DBRef("customer", "c1")));
+    }
+
+    @Test
+    public void bulkFetchAnswersEachReferenceInOrder() {
+        List<Document> documents = guard.bulkFetch(Arrays.asList(new DBRef("card", "k1"), new DBRef("address", "a1")));
+
+        assertEquals(Arrays.asList(new Document("_id", "k1"), new Document("_id", "a1")), documents);
+    }
+
+    @Test
+    public void bulkFetchWithABlockedReferenceFails() {
+        assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> guard.bulkFetch(Arrays.asList(new DBRef("card", "k1"), new DBRef("item", "i1"))));
+    }
+
+    @Test
+    public void dbRefResolutionIsBlocked() {
+        assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> guard.resolveDbRef(null, new DBRef("address", "a1"), null, null));
+    }
+
+    @Test
+    public void documentReferenceResolutionIsBlocked() {
+        assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> guard.resolveReference(null, "a1", null, null));
+    }
+}
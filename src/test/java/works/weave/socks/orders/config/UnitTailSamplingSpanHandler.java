@@ -0,0 +1,160 @@
+package works.weave.socks.orders.config;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UnitTailSamplingSpanHandler {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // Names of the spans passed on for export
+    private final List<String> exported = new ArrayList<>();
+
+    private final SpanHandler exporter = new SpanHandler() {
+        @Override
+        public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+            exported.add(span.name());
+            return true;
+        }
+    };
+
+    private Tracing tracing;
+
+    private Tracer tracer;
+
+    @AfterEach
+    public void tearDown() {
+        tracing.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void start(int maxSpansPerTrace) {
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(registry);
+        // Baseline rate 0: only errors and slow traces are kept
+        tracing = Tracing.newBuilder()
+                .addSpanHandler(new TailSamplingSpanHandler(exporter, Duration.ofMillis(100), 0.0,
+                        100, maxSpansPerTrace, Duration.ofMinutes(1), provider))
+                .build();
+        tracer = tracing.tracer();
+    }
+
+    private Span root() {
+        return tracer.newTrace().name("root").start(1_000_000);
+    }
+
+    private Span child(Span root, String name) {
+        return tracer.newChild(root.context()).name(name).start();
+    }
+
+    private double traces(String decision) {
+        return registry.get("orders.tracing.tail.traces").tag("decision", decision).counter().count();
+    }
+
+    @Test
+    public void traceWithAnErrorIsKept() {
+        start(10);
+        Span root = root();
+        child(root, "payment").error(new IllegalStateException("declined")).finish();
+
+        assertTrue(exported.isEmpty());
+        root.finish(1_000_010);
+
+        assertEquals(List.of("payment", "root"), exported);
+        assertEquals(1.0, traces("kept_error"));
+    }
+
+    @Test
+    public void slowTraceIsKept() {
+        start(10);
+        Span root = root();
+        child(root, "carts").finish();
+
+        root.finish(1_000_000 + Duration.ofMillis(150).toNanos() / 1000);
+
+        assertEquals(List.of("carts", "root"), exported);
+        assertEquals(1.0, traces("kept_slow"));
+    }
+
+    @Test
+    public void fastTraceIsDiscarded() {
+        start(10);
+        Span root = root();
+        child(root, "carts").finish();
+
+        root.finish(1_000_010);
+
+        assertTrue(exported.isEmpty());
+        assertEquals(1.0, traces("discarded"));
+    }
+
+    @Test
+    public void spanEndingAfterAKeptRootIsExported() {
+        start(10);
+        Span root = root();
+        Span late = child(root, "shipping");
+        root.error(new IllegalStateException("timeout")).finish(1_000_010);
+
+        late.finish();
+
+        assertEquals(List.of("root", "shipping"), exported);
+    }
+
+    @Test
+    public void spanEndingAfterADiscardedRootIsDropped() {
+        start(10);
+        Span root = root();
+        Span late = child(root, "shipping");
+        root.finish(1_000_010);
+
+        late.finish();
+
+        assertTrue(exported.isEmpty());
+        assertEquals(1.0, traces("discarded"));
+    }
+
+    @Test
+    public void spansOverThePerTraceLimitAreDroppedAndCounted() {
+        start(2);
+        Span root = root();
+        child(root, "user").finish();
+        child(root, "carts").finish();
+        child(root, "payment").error(new IllegalStateException("declined")).finish();
+
+        root.finish(1_000_010);
+
+        // The third span was dropped, error and all, so the trace no longer looks failed
+        assertEquals(1.0, registry.get("orders.tracing.tail.dropped").tag("reason", "span_limit").counter().count());
+        assertEquals(1.0, traces("discarded"));
+        assertTrue(exported.isEmpty());
+    }
+
+    @Test
+    public void errorOnTheLocalRootKeepsItsBufferedSpans() {
+        start(2);
+        Span root = root();
+        child(root, "user").finish();
+        child(root, "carts").finish();
+        child(root, "payment").finish();
+
+        root.error(new IllegalStateException("payment failed")).finish(1_000_010);
+
+        assertEquals(List.of("user", "carts", "root"), exported);
+        assertEquals(1.0, registry.get("orders.tracing.tail.dropped").tag("reason", "span_limit").counter().count());
+    }
+}
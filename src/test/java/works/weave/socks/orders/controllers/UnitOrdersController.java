@@ -0,0 +1,42 @@
+package works.weave.socks.orders.controllers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitOrdersController {
+
+    @Test
+    public void gzipWhenListedWithoutQuality() {
+        assertTrue(OrdersController.acceptsGzip("gzip"));
+        assertTrue(OrdersController.acceptsGzip("deflate, GZIP, br"));
+        assertTrue(OrdersController.acceptsGzip("x-gzip"));
+    }
+
+    @Test
+    public void gzipFollowsItsQuality() {
+        assertTrue(OrdersController.acceptsGzip("gzip;q=0.5"));
+        assertTrue(OrdersController.acceptsGzip("br;q=1.0, gzip ; q=0.001"));
+        assertFalse(OrdersController.acceptsGzip("gzip;q=0"));
+        assertFalse(OrdersController.acceptsGzip("gzip; q=0.000, identity"));
+        assertFalse(OrdersController.acceptsGzip("gzip;q=high"));
+    }
+
+    @Test
+    public void wildcardCoversGzipUnlessGzipIsListed() {
+        assertTrue(OrdersController.acceptsGzip("*"));
+        assertTrue(OrdersController.acceptsGzip("br, *;q=0.1"));
+        assertFalse(OrdersController.acceptsGzip("*;q=0"));
+        assertFalse(OrdersController.acceptsGzip("gzip;q=0, *"));
+        assertTrue(OrdersController.acceptsGzip("gzip, *;q=0"));
+    }
+
+    @Test
+    public void noGzipOtherwise() {
+        assertFalse(OrdersController.acceptsGzip(null));
+        assertFalse(OrdersController.acceptsGzip(""));
+        assertFalse(OrdersController.acceptsGzip("identity"));
+        assertFalse(OrdersController.acceptsGzip("deflate, br"));
+        assertFalse(OrdersController.acceptsGzip("notgzip"));
+    }
+}
@@ -16,7 +16,7 @@ import java.util.List;
 
 public class UnitPojo {
     // Configured for expectation, so we know when a class gets added or removed.
-    private static final int EXPECTED_CLASS_COUNT = 8;
+    private static final int EXPECTED_CLASS_COUNT = 9;
 
     // The package to test
     private static final String POJO_PACKAGE = "works.weave.socks.orders.entities";
@@ -0,0 +1,92 @@
+package works.weave.socks.orders.load;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.util.Random;
+
+/**
+ * Response delay of a stub downstream, parsed from a spec:
+ * <ul>
+ * <li>{@code none}</li>
+ * <li>{@code fixed:20ms}</li>
+ * <li>{@code uniform:5ms:50ms} (min, max)</li>
+ * <li>{@code exponential:20ms} (mean)</li>
+ * <li>{@code lognormal:20ms:0.5} (median, sigma; a sigma of 1 puts p99 at about ten times the median)</li>
+ * </ul>
+ */
+public abstract class LatencyDistribution {
+
+    public abstract long sampleNanos(Random random);
+
+    public static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        switch (parts[0]) {
+            case "none":
+                return fixed(0);
+            case "fixed":
+                return fixed(nanos(parts, 1));
+            case "uniform":
+                return uniform(nanos(parts, 1), nanos(parts, 2));
+            case "exponential":
+                return exponential(nanos(parts, 1));
+            case "lognormal":
+                return lognormal(nanos(parts, 1), Double.parseDouble(part(parts, 2)));
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        }
+    }
+
+    private static LatencyDistribution fixed(long nanos) {
+        return describe(random -> nanos, "fixed " + millis(nanos));
+    }
+
+    private static LatencyDistribution uniform(long min, long max) {
+        if (max < min) {
+            throw new IllegalArgumentException("uniform latency max is below min");
+        }
+        return describe(random -> min + (long) (random.nextDouble() * (max - min)),
+                "uniform " + millis(min) + ".." + millis(max));
+    }
+
+    private static LatencyDistribution exponential(long mean) {
+        return describe(random -> (long) (-Math.log(1 - random.nextDouble()) * mean), "exponential mean " + millis(mean));
+    }
+
+    private static LatencyDistribution lognormal(long median, double sigma) {
+        return describe(random -> (long) (median * Math.exp(sigma * random.nextGaussian())),
+                "lognormal median " + millis(median) + " sigma " + sigma);
+    }
+
+    private static LatencyDistribution describe(Sampler sampler, String description) {
+        return new LatencyDistribution() {
+            @Override
+            public long sampleNanos(Random random) {
+                return sampler.sample(random);
+            }
+
+            @Override
+            public String toString() {
+                return description;
+            }
+        };
+    }
+
+    private static long nanos(String[] parts, int index) {
+        return DurationStyle.detectAndParse(part(parts, index)).toNanos();
+    }
+
+    private static String part(String[] parts, int index) {
+        if (parts.length <= index) {
+            throw new IllegalArgumentException("Missing parameter " + index + " for latency distribution " + parts[0]);
+        }
+        return parts[index];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    private interface Sampler {
+        long sample(Random random);
+    }
+}
@@ -0,0 +1,140 @@
+package works.weave.socks.orders.load;
+
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import works.weave.socks.orders.OrderApplication;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline end-to-end load test: starts an embedded mongod, the stub downstream services and the application
+ * in this JVM, drives POST /orders open loop and prints throughput and latency percentiles.
+ * <p>
+ * Run with {@code mvn -P load test-compile exec:exec -Dload.args="--load.rate=200 --load.duration=60s"}.
+ * Harness options (defaults in brackets):
+ * <ul>
+ * <li>{@code --load.rate} orders per second [100], {@code --load.duration} [30s], {@code --load.warmup} [10s]</li>
+ * <li>{@code --load.customers} distinct customers, which decides the hit rate of the customer caches [1000]</li>
+ * <li>{@code --load.cart-size} items per cart, {@code n} or {@code min:max} [1:10]</li>
+ * <li>{@code --load.<user|carts|payment|shipping>.latency}, see {@link LatencyDistribution}
+ * [lognormal around 5ms, 5ms, 20ms and 10ms]</li>
+ * <li>{@code --load.<user|carts|payment|shipping>.error-rate} share of stub requests failing with a 500 [0]</li>
+ * <li>{@code --load.max-in-flight} [10000], {@code --load.timeout} [30s]</li>
+ * <li>{@code --load.mongo-version} embedded mongod version [V6_0], or {@code --load.mongo-uri} to use a running
+ * mongod instead. The embedded mongod is downloaded once into ~/.embedmongo and runs offline after that.</li>
+ * </ul>
+ * Every other argument is passed to the application, e.g. {@code --orders.logging.mode=verbose}.
+ * The stubs are reached as an HTTP proxy, which the default RestTemplate transport supports.
+ */
+public class LoadHarness {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadHarness.class);
+
+    private static final Map<String, String> DEFAULT_LATENCIES = Map.of(
+            "user", "lognormal:5ms:0.5",
+            "carts", "lognormal:5ms:0.5",
+            "payment", "lognormal:20ms:0.5",
+            "shipping", "lognormal:10ms:0.5");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> appArgs = new LinkedHashMap<>();
+        // Quiet, self-contained defaults for the application; any of them can be overridden on the command line
+        appArgs.put("server.port", "0");
+        appArgs.put("management.tracing.enabled", "false");
+        appArgs.put("orders.logging.mode", "summary");
+        appArgs.put("spring.autoconfigure.exclude",
+                "de.flapdoodle.embed.mongo.spring.autoconfigure.EmbeddedMongoAutoConfiguration");
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            String value = option.length > 1 ? option[1] : "true";
+            if (option[0].startsWith("load.")) {
+                options.put(option[0].substring("load.".length()), value);
+            } else {
+                appArgs.put(option[0], value);
+            }
+        }
+
+        TransitionWalker.ReachedState<RunningMongodProcess> mongod = null;
+        StubDownstreams stubs = null;
+        ConfigurableApplicationContext application = null;
+        OpenLoopDriver driver = null;
+        int exitCode = 0;
+        try {
+            String mongoUri = options.get("mongo-uri");
+            if (mongoUri == null) {
+                Version.Main version = Version.Main.valueOf(options.getOrDefault("mongo-version", "V6_0"));
+                mongod = Mongod.instance().start(version);
+                ServerAddress address = mongod.current().getServerAddress();
+                mongoUri = "mongodb://" + address.getHost() + ":" + address.getPort() + "/data";
+            }
+            appArgs.putIfAbsent("spring.data.mongodb.uri", mongoUri);
+
+            Map<String, LatencyDistribution> latencies = new HashMap<>();
+            Map<String, Double> errorRates = new HashMap<>();
+            for (String service : StubDownstreams.SERVICES) {
+                latencies.put(service, LatencyDistribution.parse(
+                        options.getOrDefault(service + ".latency", DEFAULT_LATENCIES.get(service))));
+                errorRates.put(service, Double.parseDouble(options.getOrDefault(service + ".error-rate", "0")));
+            }
+            String[] cartSize = options.getOrDefault("cart-size", "1:10").split(":");
+            stubs = new StubDownstreams(latencies, errorRates, Integer.parseInt(cartSize[0]),
+                    Integer.parseInt(cartSize[cartSize.length - 1]));
+            appArgs.putIfAbsent("proxy.host", "127.0.0.1");
+            appArgs.putIfAbsent("proxy.port", Integer.toString(stubs.getPort()));
+
+            List<String> springArgs = new ArrayList<>();
+            appArgs.forEach((key, value) -> springArgs.add("--" + key + "=" + value));
+            application = SpringApplication.run(OrderApplication.class, springArgs.toArray(new String[0]));
+            int port = ((WebServerApplicationContext) application).getWebServer().getPort();
+
+            driver = new OpenLoopDriver(URI.create("http://127.0.0.1:" + port + "/orders"),
+                    Double.parseDouble(options.getOrDefault("rate", "100")),
+                    Integer.parseInt(options.getOrDefault("customers", "1000")),
+                    Integer.parseInt(options.getOrDefault("max-in-flight", "10000")),
+                    duration(options, "timeout", "30s"));
+            OpenLoopDriver.Result result = driver.run(duration(options, "warmup", "10s"),
+                    duration(options, "duration", "30s"));
+
+            System.out.println();
+            System.out.println("=== Load harness: POST /orders, " + options + " ===");
+            result.print(System.out);
+            System.out.println("Stub calls:  " + stubs.getRequestCounts() + " (warm-up included)");
+        } catch (Exception e) {
+            LOG.error("Load run failed", e);
+            exitCode = 1;
+        } finally {
+            if (driver != null) {
+                driver.close();
+            }
+            if (application != null) {
+                application.close();
+            }
+            if (stubs != null) {
+                stubs.close();
+            }
+            if (mongod != null) {
+                mongod.close();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private static Duration duration(Map<String, String> options, String name, String defaultValue) {
+        return DurationStyle.detectAndParse(options.getOrDefault(name, defaultValue));
+    }
+}
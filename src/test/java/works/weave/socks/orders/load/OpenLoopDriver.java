@@ -0,0 +1,192 @@
+package works.weave.socks.orders.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends POST /orders at a fixed rate regardless of how fast responses come back (open loop), so a slow
+ * application builds a queue instead of slowing the load down. Latency is measured from when each request
+ * was due to be sent, not from when it actually went out, which keeps a stalled sender from hiding the
+ * stall (coordinated omission). Requests over the in-flight cap are not sent and are counted as overflow.
+ */
+public class OpenLoopDriver {
+    private static final Logger LOG = LoggerFactory.getLogger(OpenLoopDriver.class);
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final URI ordersUri;
+
+    private final double rate;
+
+    private final int customers;
+
+    private final int maxInFlight;
+
+    private final Duration timeout;
+
+    private final HttpClient client;
+
+    private final ExecutorService responses;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OpenLoopDriver(URI ordersUri, double rate, int customers, int maxInFlight, Duration timeout) {
+        this.ordersUri = ordersUri;
+        this.rate = rate;
+        this.customers = customers;
+        this.maxInFlight = maxInFlight;
+        this.timeout = timeout;
+        this.responses = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(responses)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Drive load for the warm-up, discarding its results, then for the measurement and wait for the
+     * measured requests to finish
+     */
+    public Result run(Duration warmup, Duration duration) throws InterruptedException {
+        if (!warmup.isZero()) {
+            LOG.info("Warming up for {} at {} orders/s", warmup, rate);
+            drive(warmup, new Result());
+        }
+        LOG.info("Measuring for {} at {} orders/s", duration, rate);
+        Result result = new Result();
+        drive(duration, result);
+        return result;
+    }
+
+    public void close() {
+        responses.shutdownNow();
+    }
+
+    private void drive(Duration duration, Result result) throws InterruptedException {
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        result.start = start;
+        for (long i = 0; ; i++) {
+            long due = start + i * periodNanos;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(due, result);
+        }
+        result.sendEnd = System.nanoTime();
+        long deadline = System.nanoTime() + timeout.toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (result.pending.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void send(long due, Result result) {
+        result.sent.increment();
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            result.count("overflow");
+            return;
+        }
+        result.pending.incrementAndGet();
+        client.sendAsync(order(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long now = System.nanoTime();
+                    inFlight.decrementAndGet();
+                    String outcome = error != null ? error.getClass().getSimpleName() : Integer.toString(response.statusCode());
+                    result.record(outcome, response != null && response.statusCode() == 201, due, now);
+                    result.pending.decrementAndGet();
+                });
+    }
+
+    private HttpRequest order() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int customer = random.nextInt(customers);
+        String body = "{\"customer\":\"http://user/customers/" + customer + "\","
+                + "\"address\":\"http://user/addresses/" + customer + "\","
+                + "\"card\":\"http://user/cards/" + customer + "\","
+                + "\"items\":\"http://carts/carts/" + Long.toHexString(random.nextLong()) + "/items\"}";
+        return HttpRequest.newBuilder(ordersUri)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /**
+     * Outcome counts and latency histograms (microseconds) of one run
+     */
+    public static class Result {
+        private final Histogram all = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final Histogram created = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        private final LongAdder sent = new LongAdder();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong lastCompletion = new AtomicLong();
+        private volatile long start;
+        private volatile long sendEnd;
+
+        private void count(String outcome) {
+            outcomes.computeIfAbsent(outcome, o -> new LongAdder()).increment();
+        }
+
+        private void record(String outcome, boolean success, long due, long now) {
+            count(outcome);
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(now - due), MAX_LATENCY_MICROS);
+            all.recordValue(micros);
+            if (success) {
+                created.recordValue(micros);
+            }
+            lastCompletion.accumulateAndGet(now, Math::max);
+        }
+
+        public void print(PrintStream out) {
+            double sendSeconds = (sendEnd - start) / 1e9;
+            double elapsedSeconds = (Math.max(lastCompletion.get(), sendEnd) - start) / 1e9;
+            Map<String, Long> counts = new TreeMap<>();
+            outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+            out.printf("Sent:        %d in %.1fs (%.1f orders/s offered)%n", sent.sum(), sendSeconds, sent.sum() / sendSeconds);
+            out.printf("Outcomes:    %s%s%n", counts, pending.get() > 0 ? ", " + pending.get() + " unfinished" : "");
+            out.printf("Throughput:  %.1f orders/s created, %.1f responses/s%n",
+                    created.getTotalCount() / elapsedSeconds, all.getTotalCount() / elapsedSeconds);
+            print(out, "201 latency", created);
+            print(out, "All latency", all);
+        }
+
+        private static void print(PrintStream out, String label, Histogram histogram) {
+            if (histogram.getTotalCount() == 0) {
+                out.printf("%s: no responses%n", label);
+                return;
+            }
+            out.printf("%s: p50 %.2fms  p90 %.2fms  p99 %.2fms  p99.9 %.2fms  max %.2fms (n=%d)%n", label,
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(90) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getMaxValue() / 1e3, histogram.getTotalCount());
+        }
+    }
+}
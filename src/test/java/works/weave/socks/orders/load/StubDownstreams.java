@@ -0,0 +1,192 @@
+package works.weave.socks.orders.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-ins for the user, carts, payment and shipping services on one loopback HTTP server.
+ * The application reaches them through its HTTP proxy setting (proxy.host/proxy.port), so the request
+ * URLs keep the real service host names and each request is routed on its Host header.
+ * Responses are delayed by the service's latency distribution without holding a server thread,
+ * and fail with a 500 at the service's error rate.
+ */
+public class StubDownstreams implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(StubDownstreams.class);
+
+    public static final String[] SERVICES = {"user", "carts", "payment", "shipping"};
+
+    private final Map<String, Service> services = new TreeMap<>();
+
+    private final int minCartSize;
+
+    private final int maxCartSize;
+
+    private final HttpServer server;
+
+    private final ExecutorService handlers;
+
+    private final ScheduledExecutorService responders;
+
+    public StubDownstreams(Map<String, LatencyDistribution> latencies, Map<String, Double> errorRates,
+                           int minCartSize, int maxCartSize) throws IOException {
+        for (String name : SERVICES) {
+            services.put(name, new Service(latencies.get(name), errorRates.getOrDefault(name, 0D)));
+        }
+        this.minCartSize = minCartSize;
+        this.maxCartSize = maxCartSize;
+        int threads = Runtime.getRuntime().availableProcessors();
+        handlers = Executors.newFixedThreadPool(threads);
+        responders = Executors.newScheduledThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+        server.start();
+        LOG.info("Stub downstreams listening on port {}: {}", getPort(), services);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Requests served per service, failures included
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        services.forEach((name, service) -> counts.put(name, service.requests.sum()));
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responders.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        String name = host == null ? "" : host.split("[.:]")[0];
+        Service service = services.get(name);
+        if (service == null) {
+            respond(exchange, 404, "application/json", "{\"error\":\"unknown service " + name + "\"}");
+            return;
+        }
+        service.requests.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        boolean fail = random.nextDouble() < service.errorRate;
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        responders.schedule(() -> {
+            try {
+                if (fail) {
+                    respond(exchange, 500, "application/json", "{\"error\":\"injected failure\"}");
+                } else {
+                    respond(exchange, name, path);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Stub {} response failed: {}", name, e.toString());
+                exchange.close();
+            }
+        }, service.latency.sampleNanos(random), TimeUnit.NANOSECONDS);
+    }
+
+    private void respond(HttpExchange exchange, String service, String[] path) throws IOException {
+        // path[0] is empty: /customers/{id}, /addresses/{id}, /cards/{id}, /carts/{id}/items, /paymentAuth, /shipping
+        String id = path.length > 2 ? path[2] : "";
+        switch (service + "/" + (path.length > 1 ? path[1] : "")) {
+            case "user/customers":
+                respond(exchange, 200, "application/hal+json", customer(id));
+                break;
+            case "user/addresses":
+                respond(exchange, 200, "application/hal+json", address(id));
+                break;
+            case "user/cards":
+                respond(exchange, 200, "application/hal+json", card(id));
+                break;
+            case "carts/carts":
+                respond(exchange, 200, "application/json", items());
+                break;
+            case "payment/paymentAuth":
+                respond(exchange, 200, "application/json", "{\"authorised\":true,\"message\":\"Payment authorised\"}");
+                break;
+            case "shipping/shipping":
+                respond(exchange, 201, "application/json", "{\"id\":\"" + UUID.randomUUID() + "\",\"name\":\"stub\"}");
+                break;
+            default:
+                respond(exchange, 404, "application/json", "{\"error\":\"not found\"}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static String customer(String id) {
+        return "{\"id\":\"" + id + "\",\"firstName\":\"Load\",\"lastName\":\"Test\",\"username\":\"load_" + id + "\","
+                + "\"_links\":{\"self\":{\"href\":\"http://user/customers/" + id + "\"},"
+                + "\"customer\":{\"href\":\"http://user/customers/" + id + "\"}}}";
+    }
+
+    private static String address(String id) {
+        return "{\"id\":\"" + id + "\",\"number\":\"246\",\"street\":\"Whitelees Road\",\"city\":\"Glasgow\","
+                + "\"postcode\":\"G67 3DL\",\"country\":\"United Kingdom\","
+                + "\"_links\":{\"self\":{\"href\":\"http://user/addresses/" + id + "\"}}}";
+    }
+
+    private static String card(String id) {
+        return "{\"id\":\"" + id + "\",\"longNum\":\"5953580604169678\",\"expires\":\"08/29\",\"ccv\":\"678\","
+                + "\"_links\":{\"self\":{\"href\":\"http://user/cards/" + id + "\"}}}";
+    }
+
+    private String items() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = minCartSize + random.nextInt(maxCartSize - minCartSize + 1);
+        StringBuilder json = new StringBuilder(64 + size * 96).append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(i).append("\",\"itemId\":\"sock-").append(random.nextInt(100))
+                    .append("\",\"quantity\":").append(1 + random.nextInt(3))
+                    .append(",\"unitPrice\":").append(5 + random.nextInt(2000) / 100F).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static class Service {
+        private final LatencyDistribution latency;
+        private final double errorRate;
+        private final LongAdder requests = new LongAdder();
+
+        private Service(LatencyDistribution latency, double errorRate) {
+            this.latency = latency;
+            this.errorRate = errorRate;
+        }
+
+        @Override
+        public String toString() {
+            return latency + ", error rate " + errorRate;
+        }
+    }
+}
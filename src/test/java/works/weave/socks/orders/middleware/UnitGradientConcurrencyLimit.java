@@ -0,0 +1,75 @@
+package works.weave.socks.orders.middleware;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitGradientConcurrencyLimit {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Tolerance 1.5, smoothing 0.2
+    private static GradientConcurrencyLimit limit(int initial, int min, int max) {
+        return new GradientConcurrencyLimit(initial, min, max, 1.5, 0.2);
+    }
+
+    // One full window of 20 samples
+    private static void window(GradientConcurrencyLimit limit, long rttNanos, int inFlight, boolean dropped) {
+        for (int i = 0; i < 20; i++) {
+            limit.onSample(rttNanos, inFlight, dropped && i == 0);
+        }
+    }
+
+    @Test
+    public void initialLimitIsClamped() {
+        assertEquals(10, limit(1, 10, 1000).getLimit());
+        assertEquals(1000, limit(5000, 10, 1000).getLimit());
+    }
+
+    @Test
+    public void growsBySqrtOfTheLimitWhileLatencyIsSteady() {
+        GradientConcurrencyLimit limit = limit(100, 10, 1000);
+        window(limit, RTT, 100, false);
+        // 100 * 0.8 + (100 + sqrt(100)) * 0.2
+        assertEquals(102, limit.getLimit());
+    }
+
+    @Test
+    public void doesNotChangeWhileMostOfTheLimitIsUnused() {
+        GradientConcurrencyLimit limit = limit(100, 10, 1000);
+        window(limit, RTT, 49, false);
+        window(limit, RTT * 10, 49, false);
+        assertEquals(100, limit.getLimit());
+    }
+
+    @Test
+    public void shrinksWhenRecentLatencyRises() {
+        GradientConcurrencyLimit limit = limit(100, 10, 1000);
+        window(limit, RTT, 100, false);
+        window(limit, RTT * 10, 100, false);
+        // The gradient bottoms out at 0.5: 102 * 0.8 + (102 * 0.5 + sqrt(102)) * 0.2
+        assertEquals(93, limit.getLimit());
+    }
+
+    @Test
+    public void backsOffWhenARequestWasDropped() {
+        GradientConcurrencyLimit limit = limit(100, 10, 1000);
+        window(limit, RTT, 10, true);
+        // 100 * 0.8 + 100 * 0.9 * 0.2, even though most of the limit was unused
+        assertEquals(98, limit.getLimit());
+    }
+
+    @Test
+    public void staysWithinMinAndMax() {
+        GradientConcurrencyLimit growing = limit(100, 10, 101);
+        window(growing, RTT, 100, false);
+        assertEquals(101, growing.getLimit());
+
+        GradientConcurrencyLimit shrinking = limit(11, 10, 1000);
+        for (int i = 0; i < 10; i++) {
+            window(shrinking, RTT, 11, true);
+        }
+        assertEquals(10, shrinking.getLimit());
+    }
+}
@@ -0,0 +1,178 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.entities.Customer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitCaffeineResourceCache {
+    private static final URI URL = URI.create("http://user/customers/1");
+
+    private static final ParameterizedTypeReference<EntityModel<Customer>> TYPE =
+            new ParameterizedTypeReference<EntityModel<Customer>>() {
+            };
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final CaffeineResourceCache cache = new CaffeineResourceCache();
+
+    // If-None-Match of every downstream call, and the responses they get in order
+    private final List<String> fetched = new ArrayList<>();
+
+    private final List<CompletableFuture<ResponseEntity<EntityModel<Customer>>>> responses = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(cache, "environment", new MockEnvironment().withProperty("http.cache.ttl.customer", "60"));
+        ReflectionTestUtils.setField(cache, "meterRegistry", registry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100L);
+        ReflectionTestUtils.setField(cache, "maxWeight", 1024L * 1024);
+        ReflectionTestUtils.setField(cache, "defaultTtl", 60L);
+        ReflectionTestUtils.setField(cache, "staleWhileRevalidate", 30L);
+        ReflectionTestUtils.setField(cache, "revalidateRetention", 300L);
+        cache.init();
+    }
+
+    private static EntityModel<Customer> customer(String firstName) {
+        Customer customer = new Customer();
+        customer.setFirstName(firstName);
+        return EntityModel.of(customer);
+    }
+
+    private static ResponseEntity<EntityModel<Customer>> ok(EntityModel<Customer> body, String etag, String cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        if (cacheControl != null) {
+            headers.setCacheControl(cacheControl);
+        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<EntityModel<Customer>> notModified(String cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        if (cacheControl != null) {
+            headers.setCacheControl(cacheControl);
+        }
+        return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+    }
+
+    // Queue the response to the next downstream call; null leaves it pending
+    private CompletableFuture<ResponseEntity<EntityModel<Customer>>> respond(ResponseEntity<EntityModel<Customer>> response) {
+        CompletableFuture<ResponseEntity<EntityModel<Customer>>> future = response != null
+                ? CompletableFuture.completedFuture(response) : new CompletableFuture<>();
+        responses.add(future);
+        return future;
+    }
+
+    private EntityModel<Customer> get() {
+        return cache.get(URL, TYPE, ifNoneMatch -> {
+            fetched.add(ifNoneMatch);
+            return responses.get(fetched.size() - 1);
+        }).join();
+    }
+
+    private static String firstName(EntityModel<Customer> model) {
+        return model.getContent().getFirstName();
+    }
+
+    // Loaded with max-age=0, so the next read finds it stale
+    private void staleEntry(String firstName) {
+        respond(ok(customer(firstName), "\"v1\"", "max-age=0"));
+        get();
+    }
+
+    @Test
+    public void freshHitIsServedWithoutAFetch() {
+        respond(ok(customer("A"), "\"v1\"", null));
+
+        assertEquals("A", firstName(get()));
+        assertEquals("A", firstName(get()));
+
+        assertEquals(1, fetched.size());
+        assertNull(fetched.get(0));
+    }
+
+    @Test
+    public void staleHitsStartOneRevalidation() {
+        staleEntry("A");
+        CompletableFuture<ResponseEntity<EntityModel<Customer>>> revalidation = respond(null);
+
+        assertEquals("A", firstName(get()));
+        assertEquals("A", firstName(get()));
+        assertEquals("A", firstName(get()));
+
+        assertEquals(List.of("\"v1\""), fetched.subList(1, fetched.size()));
+        assertEquals(3.0, registry.get("orders.downstream.cache.stale").tag("type", "customer").counter().count());
+
+        revalidation.complete(ok(customer("B"), "\"v2\"", null));
+        assertEquals("B", firstName(get()));
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    public void notModifiedKeepsTheBodyAndRefreshesTheEntry() {
+        staleEntry("A");
+        respond(notModified(null));
+
+        assertEquals("A", firstName(get()));
+
+        // Fresh again for the configured 60s: served without another fetch
+        assertEquals("A", firstName(get()));
+        assertEquals(2, fetched.size());
+        assertEquals(1.0, registry.get("orders.downstream.cache.load").tag("outcome", "not_modified").timer().count());
+    }
+
+    @Test
+    public void noStoreIsNotCached() {
+        respond(ok(customer("A"), "\"v1\"", "no-store"));
+        respond(ok(customer("B"), "\"v2\"", null));
+
+        assertEquals("A", firstName(get()));
+        assertEquals("B", firstName(get()));
+
+        assertEquals(2, fetched.size());
+        assertNull(fetched.get(1));
+    }
+
+    @Test
+    public void maxAgeShortensTheConfiguredTtl() {
+        respond(ok(customer("A"), "\"v1\"", "max-age=0, stale-while-revalidate=10"));
+        respond(ok(customer("B"), "\"v2\"", null));
+
+        assertEquals("A", firstName(get()));
+        // Stale at once: the old body is served and revalidated
+        assertEquals("A", firstName(get()));
+
+        assertEquals("\"v1\"", fetched.get(1));
+        assertEquals("B", firstName(get()));
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    public void failedRevalidationKeepsServingTheStaleEntry() {
+        staleEntry("A");
+        respond(null).completeExceptionally(new IllegalStateException("user service down"));
+        respond(null);
+
+        assertEquals("A", firstName(get()));
+        // The failure ends the revalidation, so the next stale read tries again
+        assertEquals("A", firstName(get()));
+
+        assertEquals(List.of("\"v1\"", "\"v1\""), fetched.subList(1, fetched.size()));
+        assertEquals(1.0, registry.get("orders.downstream.cache.load").tag("outcome", "error").timer().count());
+    }
+}
@@ -0,0 +1,117 @@
+package works.weave.socks.orders.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.config.JsonCodecRegistry;
+import works.weave.socks.orders.controllers.OrdersController.InvalidOrderException;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.values.CartItems;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitCartItemsDecoder {
+    private final CartItemsDecoder decoder = new CartItemsDecoder(new JsonCodecRegistry(new ObjectMapper()));
+
+    {
+        ReflectionTestUtils.setField(decoder, "maxItems", 3);
+        ReflectionTestUtils.setField(decoder, "maxBytes", 1024L);
+    }
+
+    private CartItems decode(String json) throws IOException {
+        return decoder.decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private long totalOf(String unitPrice) throws IOException {
+        return decode("[{\"itemId\":\"sock\",\"quantity\":1,\"unitPrice\":" + unitPrice + "}]").getTotalCents();
+    }
+
+    private void assertRejected(String json, String message) {
+        InvalidOrderException e = assertThrows(InvalidOrderException.class, () -> decode(json));
+        assertEquals(message, e.getMessage());
+    }
+
+    @Test
+    public void decodesItemsAndTotalsThemInCents() throws IOException {
+        CartItems cart = decode("[{\"id\":\"i1\",\"itemId\":\"sock\",\"quantity\":2,\"unitPrice\":10.5,\"extra\":{\"a\":[1]}},"
+                + "{\"itemId\":\"shoe\",\"unitPrice\":3}]");
+
+        assertEquals(2, cart.getItems().size());
+        Item first = cart.getItems().get(0);
+        assertEquals("i1", first.getId());
+        assertEquals("sock", first.getItemId());
+        assertEquals(2, first.getQuantity());
+        assertEquals(10.5F, first.getUnitPrice());
+        assertEquals(1, cart.getItems().get(1).getQuantity());
+        assertEquals(2400, cart.getTotalCents());
+    }
+
+    @Test
+    public void roundsPricesHalfUp() throws IOException {
+        assertEquals(1001, totalOf("10.005"));
+        assertEquals(1000, totalOf("10.004"));
+        assertEquals(13, totalOf("0.125"));
+        assertEquals(200, totalOf("1.999"));
+        assertEquals(150, totalOf("1.5"));
+        assertEquals(1250, totalOf("1.25e1"));
+        assertEquals(1, totalOf("5E-3"));
+    }
+
+    @Test
+    public void rejectsTotalsOutOfRange() {
+        assertRejected("[{\"itemId\":\"a\",\"unitPrice\":92233720368547759}]", "Cart total is out of range.");
+        assertRejected("[{\"itemId\":\"a\",\"unitPrice\":99999999999999999999}]", "Cart total is out of range.");
+        assertRejected("[{\"itemId\":\"a\",\"unitPrice\":99999999999999999999.5}]", "Cart total is out of range.");
+        assertRejected("[{\"itemId\":\"a\",\"unitPrice\":1e30}]", "Cart total is out of range.");
+        assertRejected("[{\"itemId\":\"a\",\"quantity\":2147483647,\"unitPrice\":92233720368547.75}]",
+                "Cart total is out of range.");
+    }
+
+    @Test
+    public void rejectsInvalidNumbers() {
+        assertRejected("[{\"itemId\":\"a\",\"unitPrice\":-1.5}]", "Item unit price must not be negative.");
+        assertRejected("[{\"itemId\":\"a\",\"unitPrice\":\"1.5\"}]", "Item unit price must be a number.");
+        assertRejected("[{\"itemId\":\"a\",\"quantity\":-1}]", "Item quantity must be a non-negative integer.");
+        assertRejected("[{\"itemId\":\"a\",\"quantity\":1.5}]", "Item quantity must be a non-negative integer.");
+        assertRejected("[{\"itemId\":\"a\",\"quantity\":2147483648}]", "Item quantity must be a non-negative integer.");
+        assertRejected("[{\"itemId\":\"a\",\"quantity\":99999999999999999999}]",
+                "Item quantity must be a non-negative integer.");
+    }
+
+    @Test
+    public void rejectsObjectsAndArraysAsIds() {
+        assertRejected("[{\"itemId\":{\"itemId\":\"sock\"}}]", "Item itemId must be a string.");
+        assertRejected("[{\"id\":[\"i1\"],\"itemId\":\"sock\"}]", "Item id must be a string.");
+    }
+
+    @Test
+    public void acceptsScalarIdsAsText() throws IOException {
+        Item item = decode("[{\"id\":7,\"itemId\":true}]").getItems().get(0);
+        assertEquals("7", item.getId());
+        assertEquals("true", item.getItemId());
+    }
+
+    @Test
+    public void rejectsMissingItemId() {
+        assertRejected("[{\"id\":\"i1\"}]", "Item Id must not be null");
+        assertRejected("[{\"itemId\":null}]", "Item Id must not be null");
+    }
+
+    @Test
+    public void rejectsPayloadsThatAreNotAnArrayOfObjects() {
+        assertRejected("{\"itemId\":\"a\"}", "Cart items must be a JSON array.");
+        assertRejected("[{\"itemId\":\"a\"},1]", "Cart items must be JSON objects.");
+    }
+
+    @Test
+    public void enforcesTheLimits() {
+        assertRejected("[{\"itemId\":\"a\"},{\"itemId\":\"b\"},{\"itemId\":\"c\"},{\"itemId\":\"d\"}]",
+                "Cart has more than 3 items.");
+        String padded = "[{\"itemId\":\"" + "x".repeat(2000) + "\"}]";
+        assertRejected(padded, "Cart items payload is larger than 1024 bytes.");
+    }
+}
@@ -0,0 +1,212 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import works.weave.socks.orders.controllers.OrdersController.DownstreamUnavailableException;
+import works.weave.socks.orders.controllers.OrdersController.InvalidOrderException;
+import works.weave.socks.orders.values.Downstream;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitDownstreamGuard {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // Window of 4 calls, opens at 50% failures, 2 trial calls when half-open
+    private DownstreamGuard guard(String name, int maxConcurrent, Duration openDuration, Duration slowCall) {
+        return new DownstreamGuard(name, maxConcurrent, 4, 4, 50.0, openDuration, 2, slowCall, registry);
+    }
+
+    private DownstreamGuard guard(Duration openDuration) {
+        return guard("user", 10, openDuration, Duration.ofSeconds(5));
+    }
+
+    private static void callSucceeding(DownstreamGuard guard) {
+        guard.execute(() -> CompletableFuture.completedFuture("v"));
+    }
+
+    private static void callFailing(DownstreamGuard guard) {
+        guard.execute(() -> CompletableFuture.failedFuture(new IllegalStateException("down")));
+    }
+
+    private static void assertRejected(CompletableFuture<?> result) {
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(DownstreamUnavailableException.class, e.getCause());
+    }
+
+    @Test
+    public void opensWhenTheFailureRateReachesTheThreshold() {
+        DownstreamGuard guard = guard(Duration.ofSeconds(10));
+        callSucceeding(guard);
+        callFailing(guard);
+        callSucceeding(guard);
+        assertEquals(DownstreamGuard.State.CLOSED, guard.state());
+        callFailing(guard);
+        assertEquals(DownstreamGuard.State.OPEN, guard.state());
+
+        assertRejected(guard.execute(() -> CompletableFuture.completedFuture("v")));
+        assertEquals(1.0, registry.get("orders.downstream.rejected").tag("reason", "circuit_open").counter().count());
+    }
+
+    @Test
+    public void staysClosedBelowTheMinimumNumberOfCalls() {
+        DownstreamGuard guard = guard(Duration.ofSeconds(10));
+        callFailing(guard);
+        callFailing(guard);
+        callFailing(guard);
+        assertEquals(DownstreamGuard.State.CLOSED, guard.state());
+    }
+
+    @Test
+    public void rejectedPayloadsAreNotFailures() {
+        DownstreamGuard guard = guard(Duration.ofSeconds(10));
+        for (int i = 0; i < 4; i++) {
+            guard.execute(() -> CompletableFuture.failedFuture(new InvalidOrderException("bad card")));
+        }
+        assertEquals(DownstreamGuard.State.CLOSED, guard.state());
+    }
+
+    @Test
+    public void slowCallsAreFailures() throws InterruptedException {
+        DownstreamGuard guard = guard("user", 10, Duration.ofSeconds(10), Duration.ofMillis(1));
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            guard.execute(() -> call);
+            Thread.sleep(5);
+            call.complete("v");
+        }
+        assertEquals(DownstreamGuard.State.OPEN, guard.state());
+    }
+
+    @Test
+    public void halfOpenClosesAfterTheTrialCallsSucceed() {
+        DownstreamGuard guard = guard(Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            callFailing(guard);
+        }
+        assertEquals(DownstreamGuard.State.OPEN, guard.state());
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        guard.execute(() -> first);
+        assertEquals(DownstreamGuard.State.HALF_OPEN, guard.state());
+        guard.execute(() -> second);
+        assertRejected(guard.execute(() -> CompletableFuture.completedFuture("v")));
+
+        first.complete("v");
+        assertEquals(DownstreamGuard.State.HALF_OPEN, guard.state());
+        second.complete("v");
+        assertEquals(DownstreamGuard.State.CLOSED, guard.state());
+    }
+
+    @Test
+    public void halfOpenReopensWhenATrialCallFails() {
+        DownstreamGuard guard = guard(Duration.ofMillis(20));
+        for (int i = 0; i < 4; i++) {
+            callFailing(guard);
+        }
+        assertRejected(guard.execute(() -> CompletableFuture.completedFuture("v")));
+
+        await(() -> guard.execute(() -> CompletableFuture.failedFuture(new IllegalStateException("down"))));
+        assertEquals(DownstreamGuard.State.OPEN, guard.state());
+    }
+
+    @Test
+    public void cancelledCallsAreNotCounted() {
+        DownstreamGuard guard = guard(Duration.ofSeconds(10));
+        callFailing(guard);
+        callFailing(guard);
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            guard.execute(() -> call);
+            call.cancel(true);
+        }
+        assertEquals(DownstreamGuard.State.CLOSED, guard.state());
+        assertEquals(10.0, registry.get("orders.downstream.bulkhead.available").gauge().value());
+    }
+
+    @Test
+    public void cancelledTrialCallFreesItsSlot() {
+        DownstreamGuard guard = guard(Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            callFailing(guard);
+        }
+        CompletableFuture<String> cancelled = new CompletableFuture<>();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        guard.execute(() -> cancelled);
+        guard.execute(() -> pending);
+        cancelled.cancel(true);
+        assertEquals(DownstreamGuard.State.HALF_OPEN, guard.state());
+
+        CompletableFuture<String> replacement = new CompletableFuture<>();
+        assertSame(replacement, guard.execute(() -> replacement));
+        pending.complete("v");
+        replacement.complete("v");
+        assertEquals(DownstreamGuard.State.CLOSED, guard.state());
+    }
+
+    @Test
+    public void bulkheadRejectsCallsBeyondItsPermits() {
+        DownstreamGuard guard = guard("user", 1, Duration.ofSeconds(10), Duration.ofSeconds(5));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        guard.execute(() -> first);
+
+        assertRejected(guard.execute(() -> CompletableFuture.completedFuture("v")));
+        assertEquals(1.0, registry.get("orders.downstream.rejected").tag("reason", "bulkhead").counter().count());
+
+        first.complete("v");
+        assertEquals("v", guard.execute(() -> CompletableFuture.completedFuture("v")).join());
+    }
+
+    @Test
+    public void bulkheadsThatFitTheExecutorPass() {
+        AsyncGetService.checkBulkheads(guards(10, 10), 40);
+        AsyncGetService.checkBulkheads(guards(50, 50), -1);
+    }
+
+    @Test
+    public void bulkheadsLargerThanTheExecutorFailAtStartup() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> AsyncGetService.checkBulkheads(guards(15, 10), 40));
+        assertTrue(e.getMessage().contains("45 concurrent calls"), e.getMessage());
+        assertTrue(e.getMessage().contains("user=15"), e.getMessage());
+    }
+
+    private Map<Downstream, DownstreamGuard> guards(int user, int others) {
+        Map<Downstream, DownstreamGuard> guards = new EnumMap<>(Downstream.class);
+        for (Downstream downstream : Downstream.values()) {
+            guards.put(downstream, guard(downstream.tag(), downstream == Downstream.USER ? user : others,
+                    Duration.ofSeconds(10), Duration.ofSeconds(5)));
+        }
+        return guards;
+    }
+
+    // Retries the call until the breaker lets it through
+    private static void await(Supplier<CompletableFuture<?>> call) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (System.nanoTime() < deadline) {
+            CompletableFuture<?> result = call.get();
+            try {
+                result.join();
+                return;
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof DownstreamUnavailableException)) {
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        fail("Circuit breaker never let a call through");
+    }
+}
@@ -0,0 +1,117 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitHedgingPolicy {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+    private HedgingPolicy policy(double budgetPercent) {
+        return new HedgingPolicy("user", 95.0, Duration.ofMillis(10), budgetPercent, 100, registry);
+    }
+
+    // Enough fast calls for the policy to compute its delay (every 50 calls once 100 latencies are in), which
+    // is then the minimum delay
+    private static void warmUp(HedgingPolicy policy) {
+        for (int i = 0; i < 150; i++) {
+            policy.execute(() -> CompletableFuture.completedFuture("v")).join();
+        }
+    }
+
+    private CompletableFuture<String> attempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    private void awaitAttempts(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (attempts.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, attempts.size());
+    }
+
+    private double count(String name) {
+        return registry.get(name).counter().count();
+    }
+
+    @Test
+    public void doesNotHedgeBeforeEnoughLatenciesWereSeen() throws InterruptedException {
+        HedgingPolicy policy = policy(100);
+        CompletableFuture<String> result = policy.execute(this::attempt);
+        Thread.sleep(50);
+        assertEquals(1, attempts.size());
+        assertSame(attempts.get(0), result);
+    }
+
+    @Test
+    public void slowAttemptIsHedgedAndTheFirstAnswerWins() throws InterruptedException {
+        HedgingPolicy policy = policy(100);
+        warmUp(policy);
+        assertEquals(0.01, registry.get("orders.downstream.hedge.delay").gauge().value(), 1e-9);
+
+        CompletableFuture<String> result = policy.execute(this::attempt);
+        awaitAttempts(2);
+        attempts.get(1).complete("hedge");
+
+        assertEquals("hedge", result.join());
+        assertTrue(attempts.get(0).isCancelled());
+        assertEquals(1.0, count("orders.downstream.hedge.fired"));
+        assertEquals(1.0, count("orders.downstream.hedge.won"));
+    }
+
+    @Test
+    public void failsOnlyOnceEveryAttemptFailed() throws InterruptedException {
+        HedgingPolicy policy = policy(100);
+        warmUp(policy);
+
+        CompletableFuture<String> result = policy.execute(this::attempt);
+        awaitAttempts(2);
+        attempts.get(0).completeExceptionally(new IllegalStateException("first"));
+        assertFalse(result.isDone());
+        attempts.get(1).completeExceptionally(new IllegalStateException("second"));
+
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertEquals("second", e.getCause().getMessage());
+    }
+
+    @Test
+    public void cancellingTheResultCancelsEveryAttempt() throws InterruptedException {
+        HedgingPolicy policy = policy(100);
+        warmUp(policy);
+
+        CompletableFuture<String> result = policy.execute(this::attempt);
+        awaitAttempts(2);
+        result.cancel(true);
+
+        assertTrue(attempts.get(0).isCancelled());
+        assertTrue(attempts.get(1).isCancelled());
+    }
+
+    @Test
+    public void hedgesStopWhenTheBudgetIsSpent() throws InterruptedException {
+        HedgingPolicy policy = policy(0);
+        warmUp(policy);
+
+        // The bucket starts with 10 tokens and a budget of 0% never refills it
+        for (int i = 0; i < 11; i++) {
+            policy.execute(this::attempt);
+            Thread.sleep(30);
+        }
+        assertEquals(10.0, count("orders.downstream.hedge.fired"), 0.0);
+        assertEquals(1.0, count("orders.downstream.hedge.throttled"), 0.0);
+        assertEquals(21, attempts.size());
+    }
+}
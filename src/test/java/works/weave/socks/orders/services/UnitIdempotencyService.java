@@ -0,0 +1,232 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import works.weave.socks.orders.controllers.OrdersController.IdempotencyKeyInProgressException;
+import works.weave.socks.orders.controllers.OrdersController.IdempotencyKeyMismatchException;
+import works.weave.socks.orders.controllers.OrdersController.InvalidIdempotencyKeyException;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.IdempotencyRecord;
+import works.weave.socks.orders.resources.NewOrderResource;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UnitIdempotencyService {
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    private final OrderService orderService = mock(OrderService.class);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final IdempotencyService service = new IdempotencyService();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(IdempotencyRecord.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.remove(any(Query.class), eq(IdempotencyRecord.class)))
+                .thenReturn(DeleteResult.acknowledged(1));
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "orderService", orderService);
+        ReflectionTestUtils.setField(service, "meterRegistry", registry);
+        ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(service, "claimLease", Duration.ofSeconds(60));
+        service.init();
+    }
+
+    private static NewOrderResource item(String customer) {
+        NewOrderResource item = new NewOrderResource();
+        item.customer = URI.create("http://user/customers/" + customer);
+        item.address = URI.create("http://user/addresses/1");
+        item.card = URI.create("http://user/cards/1");
+        item.items = URI.create("http://carts/carts/1/items");
+        return item;
+    }
+
+    private static CustomerOrder order(String id) {
+        CustomerOrder order = new CustomerOrder();
+        order.setId(id);
+        return order;
+    }
+
+    private CompletableFuture<CustomerOrder> action(CompletableFuture<CustomerOrder> result) {
+        calls.incrementAndGet();
+        return result;
+    }
+
+    private void storedRecord(IdempotencyRecord record) {
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenThrow(new DuplicateKeyException("exists"));
+        when(mongoTemplate.findById("k", IdempotencyRecord.class)).thenReturn(record);
+    }
+
+    // The record the first request for item("1") leaves behind
+    private static IdempotencyRecord record(String orderId, Date claimedAt) {
+        IdempotencyRecord record = new IdempotencyRecord("k", fingerprint(item("1")), orderId, claimedAt);
+        record.setClaimedAt(claimedAt);
+        return record;
+    }
+
+    private static String fingerprint(NewOrderResource item) {
+        return item.customer + "|" + item.address + "|" + item.card + "|" + item.items;
+    }
+
+    private double requests(String result) {
+        return registry.get("orders.idempotency.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    public void withoutAKeyTheActionJustRuns() {
+        CustomerOrder order = order("o1");
+
+        assertSame(order, service.execute(null, item("1"), () -> action(CompletableFuture.completedFuture(order))).join());
+
+        assertEquals(1, calls.get());
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    public void overLongKeyIsABadRequest() {
+        String key = "k".repeat(256);
+
+        assertThrows(InvalidIdempotencyKeyException.class,
+                () -> service.execute(key, item("1"), () -> action(new CompletableFuture<>())));
+
+        assertEquals(0, calls.get());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                AnnotationUtils.findAnnotation(InvalidIdempotencyKeyException.class, ResponseStatus.class).value());
+    }
+
+    @Test
+    public void concurrentDuplicatesJoinOneExecution() {
+        CompletableFuture<CustomerOrder> shared = new CompletableFuture<>();
+        CompletableFuture<CustomerOrder> first = service.execute("k", item("1"), () -> action(shared));
+        CompletableFuture<CustomerOrder> second = service.execute("k", item("1"), () -> action(new CompletableFuture<>()));
+
+        assertFalse(second.isDone());
+        shared.complete(order("o1"));
+
+        assertEquals("o1", first.join().getId());
+        assertEquals("o1", second.join().getId());
+        assertEquals(1, calls.get());
+        verify(mongoTemplate, times(1)).insert(any(IdempotencyRecord.class));
+        verify(mongoTemplate).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(IdempotencyRecord.class));
+        assertEquals(1.0, requests("join"));
+        assertEquals(1.0, requests("miss"));
+    }
+
+    @Test
+    public void joiningWithADifferentOrderIsAMismatch() {
+        service.execute("k", item("1"), () -> action(new CompletableFuture<>()));
+
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> service.execute("k", item("2"), () -> action(new CompletableFuture<>())));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void completedKeyReplaysTheStoredOrder() {
+        storedRecord(record("o1", new Date()));
+        when(orderService.findById("o1")).thenReturn(Optional.of(order("o1")));
+
+        CustomerOrder replayed = service.execute("k", item("1"), () -> action(new CompletableFuture<>())).join();
+
+        assertEquals("o1", replayed.getId());
+        assertEquals(0, calls.get());
+        assertEquals(1.0, requests("hit"));
+    }
+
+    @Test
+    public void storedKeyWithADifferentOrderIsAMismatch() {
+        storedRecord(record("o1", new Date()));
+
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> service.execute("k", item("2"), () -> action(new CompletableFuture<>())));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY,
+                AnnotationUtils.findAnnotation(IdempotencyKeyMismatchException.class, ResponseStatus.class).value());
+
+        // The failed request leaves nothing behind for the next one to join
+        when(orderService.findById("o1")).thenReturn(Optional.of(order("o1")));
+        assertEquals("o1", service.execute("k", item("1"), () -> action(new CompletableFuture<>())).join().getId());
+    }
+
+    @Test
+    public void keyClaimedByAnotherInstanceIsAConflict() {
+        storedRecord(record(null, new Date()));
+
+        assertThrows(IdempotencyKeyInProgressException.class,
+                () -> service.execute("k", item("1"), () -> action(new CompletableFuture<>())));
+        assertEquals(0, calls.get());
+        assertEquals(HttpStatus.CONFLICT,
+                AnnotationUtils.findAnnotation(IdempotencyKeyInProgressException.class, ResponseStatus.class).value());
+    }
+
+    @Test
+    public void claimWhoseLeaseRanOutIsTakenOver() {
+        storedRecord(record(null, new Date(System.currentTimeMillis() - Duration.ofMinutes(5).toMillis())));
+
+        CompletableFuture<CustomerOrder> result = service.execute("k", item("1"),
+                () -> action(CompletableFuture.completedFuture(order("o2"))));
+
+        assertEquals("o2", result.join().getId());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void claimTakenOverByAnotherInstanceFirstIsAConflict() {
+        storedRecord(record(null, new Date(System.currentTimeMillis() - Duration.ofMinutes(5).toMillis())));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(IdempotencyRecord.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertThrows(IdempotencyKeyInProgressException.class,
+                () -> service.execute("k", item("1"), () -> action(new CompletableFuture<>())));
+    }
+
+    @Test
+    public void failedActionReleasesTheKey() {
+        CompletableFuture<CustomerOrder> failed = service.execute("k", item("1"),
+                () -> action(CompletableFuture.failedFuture(new IllegalStateException("payment down"))));
+
+        assertThrows(CompletionException.class, failed::join);
+        verify(mongoTemplate).remove(any(Query.class), eq(IdempotencyRecord.class));
+
+        CompletableFuture<CustomerOrder> retry = service.execute("k", item("1"),
+                () -> action(CompletableFuture.completedFuture(order("o1"))));
+        assertEquals("o1", retry.join().getId());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void actionThrowingReleasesTheKey() {
+        CompletableFuture<CustomerOrder> failed = service.execute("k", item("1"), () -> {
+            throw new IllegalStateException("bad");
+        });
+
+        assertThrows(CompletionException.class, failed::join);
+        verify(mongoTemplate).remove(any(Query.class), eq(IdempotencyRecord.class));
+    }
+}
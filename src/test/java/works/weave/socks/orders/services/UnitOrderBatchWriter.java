@@ -0,0 +1,160 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.controllers.OrdersController.OrderQueueFullException;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class UnitOrderBatchWriter {
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    private final BulkOperations bulk = mock(BulkOperations.class);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final ExecutorService completer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "completer"));
+
+    private final OrderBatchWriter writer = new OrderBatchWriter();
+
+    private void start(int maxSize, int flushers, int queueCapacity) {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CustomerOrder.class)).thenReturn(bulk);
+        when(bulk.insert(anyList())).thenReturn(bulk);
+        ReflectionTestUtils.setField(writer, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(writer, "registry", registry);
+        ReflectionTestUtils.setField(writer, "taskExecutor", completer);
+        ReflectionTestUtils.setField(writer, "maxSize", maxSize);
+        ReflectionTestUtils.setField(writer, "maxWait", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(writer, "flushers", flushers);
+        ReflectionTestUtils.setField(writer, "queueCapacity", queueCapacity);
+        writer.start();
+    }
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        writer.stop();
+        completer.shutdownNow();
+    }
+
+    private List<CompletableFuture<CustomerOrder>> insert(int count) {
+        List<CompletableFuture<CustomerOrder>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(writer.insert(new CustomerOrder()));
+        }
+        return futures;
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        return assertThrows(CompletionException.class, future::join).getCause();
+    }
+
+    private static BulkOperationException bulkFailure(BulkWriteError... errors) {
+        return new BulkOperationException("bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), Arrays.asList(errors), null, new ServerAddress(), new HashSet<>()));
+    }
+
+    @Test
+    public void writesTheBatchWithIdsAssigned() {
+        start(3, 1, 10);
+        List<CompletableFuture<CustomerOrder>> futures = insert(3);
+
+        for (CompletableFuture<CustomerOrder> future : futures) {
+            assertNotNull(future.join().getId());
+        }
+        verify(bulk).insert(argThat((List<?> orders) -> orders.size() == 3));
+        assertEquals(1, registry.get("orders.mongodb.batch.flush").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    public void partialFailureFailsOnlyTheOrdersWithAnError() {
+        start(3, 1, 10);
+        when(bulk.execute()).thenThrow(bulkFailure(
+                new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1),
+                new BulkWriteError(121, "document failed validation", new BsonDocument(), 2)));
+        List<CompletableFuture<CustomerOrder>> futures = insert(3);
+
+        assertNotNull(futures.get(0).join().getId());
+        assertInstanceOf(DuplicateKeyException.class, failure(futures.get(1)));
+        Throwable invalid = failure(futures.get(2));
+        assertInstanceOf(DataIntegrityViolationException.class, invalid);
+        assertFalse(invalid instanceof DuplicateKeyException);
+        assertEquals(1, registry.get("orders.mongodb.batch.flush").tag("outcome", "partial").timer().count());
+        assertEquals(2, registry.get("orders.mongodb.batch.wait").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    public void bulkFailureWithoutDocumentErrorsFailsEveryOrder() {
+        start(2, 1, 10);
+        BulkOperationException writeConcern = bulkFailure();
+        when(bulk.execute()).thenThrow(writeConcern);
+        List<CompletableFuture<CustomerOrder>> futures = insert(2);
+
+        for (CompletableFuture<CustomerOrder> future : futures) {
+            assertSame(writeConcern, failure(future));
+        }
+        assertEquals(1, registry.get("orders.mongodb.batch.flush").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    public void batchFailureFailsEveryOrder() {
+        start(2, 1, 10);
+        DataAccessResourceFailureException down = new DataAccessResourceFailureException("down");
+        when(bulk.execute()).thenThrow(down);
+        List<CompletableFuture<CustomerOrder>> futures = insert(2);
+
+        for (CompletableFuture<CustomerOrder> future : futures) {
+            assertSame(down, failure(future));
+        }
+    }
+
+    @Test
+    public void completesTheCallersOnTheTaskExecutor() {
+        start(1, 1, 10);
+        // Hold the completer until the callback is attached, so it cannot run on this thread instead
+        CountDownLatch attached = new CountDownLatch(1);
+        completer.execute(() -> {
+            try {
+                attached.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        CompletableFuture<String> thread = insert(1).get(0).thenApply(order -> Thread.currentThread().getName());
+        attached.countDown();
+        assertEquals("completer", thread.join());
+    }
+
+    @Test
+    public void rejectsOrdersWhenTheQueueIsFull() {
+        start(1, 0, 1);
+        insert(1);
+        assertInstanceOf(OrderQueueFullException.class, failure(insert(1).get(0)));
+    }
+}
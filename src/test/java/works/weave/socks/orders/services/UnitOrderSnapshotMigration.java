@@ -0,0 +1,193 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.entities.CustomerOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UnitOrderSnapshotMigration {
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    private final OrderSnapshotStore snapshotStore = mock(OrderSnapshotStore.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> orders = mock(MongoCollection.class);
+
+    @SuppressWarnings("unchecked")
+    private final FindIterable<Document> found = mock(FindIterable.class);
+
+    private final OrderSnapshotMigration migration = new OrderSnapshotMigration();
+
+    private final List<List<? extends WriteModel<Document>>> written = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(mongoTemplate.getCollectionName(CustomerOrder.class)).thenReturn("customerOrder");
+        when(mongoTemplate.getCollection("customerOrder")).thenReturn(orders);
+        when(orders.find(any(Bson.class))).thenReturn(found);
+        when(found.projection(any())).thenReturn(found);
+        when(found.batchSize(anyInt())).thenReturn(found);
+        when(orders.bulkWrite(anyList())).thenAnswer(invocation -> {
+            List<? extends WriteModel<Document>> updates = new ArrayList<>(invocation.getArgument(0));
+            written.add(updates);
+            return BulkWriteResult.acknowledged(0, updates.size(), 0, updates.size(),
+                    Collections.emptyList(), Collections.emptyList());
+        });
+        // Snapshot hashes stand in for customers, addresses and cards, and back
+        when(snapshotStore.dehydrate(any())).thenAnswer(invocation -> convert(invocation.getArgument(0), Document.class,
+                part -> "hash-" + part));
+        when(snapshotStore.hydrate(any())).thenAnswer(invocation -> convert(invocation.getArgument(0), String.class,
+                part -> new Document("_id", part)));
+        ReflectionTestUtils.setField(migration, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(migration, "snapshotStore", snapshotStore);
+        ReflectionTestUtils.setField(migration, "batchSize", 2);
+        ReflectionTestUtils.setField(migration, "lease", Duration.ofMinutes(5));
+    }
+
+    private static boolean convert(Document order, Class<?> from, Function<String, Object> to) {
+        boolean changed = false;
+        for (String part : OrderSnapshotStore.PARTS) {
+            if (from.isInstance(order.get(part))) {
+                order.put(part, to.apply(part));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stored(Document... documents) {
+        Iterator<Document> iterator = Arrays.asList(documents).iterator();
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        when(found.iterator()).thenReturn(cursor);
+    }
+
+    private void start(boolean toSnapshots) {
+        when(snapshotStore.isEnabled()).thenReturn(toSnapshots);
+        migration.init();
+    }
+
+    private static Document embedded(String id) {
+        return new Document("_id", id).append("customer", new Document("_id", "c1"))
+                .append("address", new Document("_id", "a1")).append("card", new Document("_id", "k1"));
+    }
+
+    private static Document dehydrated(String id) {
+        return new Document("_id", id).append("customer", "hash-customer").append("address", "hash-address")
+                .append("card", "hash-card");
+    }
+
+    private String filter() {
+        ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+        verify(orders).find(filter.capture());
+        return filter.getValue().toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()).toJson();
+    }
+
+    private static BsonDocument update(WriteModel<Document> model) {
+        return ((UpdateOneModel<Document>) model).getUpdate()
+                .toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    private Update marker() {
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce()).upsert(any(Query.class), update.capture(), eq(BackgroundMigration.MARKERS));
+        return (Update) update.getValue();
+    }
+
+    @Test
+    public void convertsEmbeddedPartsToSnapshots() {
+        start(true);
+        stored(embedded("o1"), embedded("o2"), embedded("o3"));
+
+        assertEquals(3, migration.migrate());
+
+        assertTrue(filter().contains("\"$type\": 3"));
+        assertEquals(2, written.size());
+        BsonDocument set = update(written.get(0).get(0)).getDocument("$set");
+        assertEquals("hash-customer", set.getString("customer").getValue());
+        assertEquals("hash-card", set.getString("card").getValue());
+        assertEquals("snapshots", marker().getUpdateObject().get("$set", Document.class).get("target"));
+        verify(mongoTemplate).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(BackgroundMigration.MARKERS));
+    }
+
+    @Test
+    public void convertsSnapshotsBackToEmbeddedParts() {
+        start(false);
+        stored(dehydrated("o1"));
+
+        assertEquals(1, migration.migrate());
+
+        assertTrue(filter().contains("\"$type\": 2"));
+        BsonDocument set = update(written.get(0).get(0)).getDocument("$set");
+        assertEquals("customer", set.getDocument("customer").getString("_id").getValue());
+        verify(snapshotStore, never()).dehydrate(any());
+        verify(mongoTemplate).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(BackgroundMigration.MARKERS));
+    }
+
+    @Test
+    public void ordersAlreadyInTheTargetFormAreNotWritten() {
+        start(true);
+        stored(dehydrated("o1"));
+
+        assertEquals(0, migration.migrate());
+
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    public void stopsWhenTheLeaseIsLostBetweenBatches() {
+        start(true);
+        stored(embedded("o1"), embedded("o2"), embedded("o3"));
+        when(mongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), anyString()))
+                .thenThrow(new DuplicateKeyException("held by another instance"));
+
+        assertEquals(2, migration.migrate());
+
+        assertEquals(1, written.size());
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), anyString());
+    }
+
+    @Test
+    public void leaseIsNotTakenWhileAnotherInstanceHoldsIt() {
+        start(true);
+        when(mongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), anyString()))
+                .thenThrow(new DuplicateKeyException("held by another instance"));
+        BackgroundMigration lease = (BackgroundMigration) ReflectionTestUtils.getField(migration, "migration");
+
+        assertFalse(lease.claim());
+    }
+}
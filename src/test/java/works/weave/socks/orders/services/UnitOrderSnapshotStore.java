@@ -0,0 +1,191 @@
+package works.weave.socks.orders.services;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class UnitOrderSnapshotStore {
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> snapshots = mock(MongoCollection.class);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final OrderSnapshotStore store = new OrderSnapshotStore();
+
+    @BeforeEach
+    public void start() {
+        MongoDatabase db = mock(MongoDatabase.class);
+        when(db.getCodecRegistry()).thenReturn(MongoClientSettings.getDefaultCodecRegistry());
+        when(mongoTemplate.getDb()).thenReturn(db);
+        when(mongoTemplate.getCollection(OrderSnapshotStore.COLLECTION)).thenReturn(snapshots);
+        ReflectionTestUtils.setField(store, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(store, "meterRegistry", registry);
+        ReflectionTestUtils.setField(store, "cacheSize", 100L);
+        store.init();
+    }
+
+    private void upserting(int inserted) {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        for (int i = 0; i < inserted; i++) {
+            upserts.add(new BulkWriteUpsert(i, new BsonString("h" + i)));
+        }
+        when(snapshots.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(BulkWriteResult.acknowledged(inserted, 0, 0, 0, upserts, Collections.emptyList()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stored(Document data) {
+        FindIterable<Document> found = mock(FindIterable.class);
+        when(found.first()).thenReturn(data == null ? null : new Document("_id", "x").append("data", data));
+        when(snapshots.find(any(Bson.class))).thenReturn(found);
+    }
+
+    private static Document customer(String firstName) {
+        return new Document("_id", "c1").append("firstName", firstName).append("lastName", "B");
+    }
+
+    private static Document order() {
+        return new Document("_id", "o1")
+                .append("customer", customer("A"))
+                .append("address", new Document("_id", "a1").append("city", "c"))
+                .append("card", new Document("_id", "k1").append("longNum", "1234"))
+                .append("total", 21.0);
+    }
+
+    private static String hash(String part, Document snapshot) {
+        return OrderSnapshotStore.hash(part, RawBsonDocument.parse(snapshot.toJson()));
+    }
+
+    private double writes(String outcome) {
+        return registry.get("orders.snapshots.writes").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    public void equalPartsHashTheSame() {
+        assertEquals(hash("customer", customer("A")), hash("customer", customer("A")));
+        assertEquals(64, hash("customer", customer("A")).length());
+    }
+
+    @Test
+    public void anyChangeToAPartChangesItsHash() {
+        assertNotEquals(hash("customer", customer("A")), hash("customer", customer("Z")));
+    }
+
+    @Test
+    public void thePartIsHashedWithItsContent() {
+        Document same = new Document("_id", "x");
+        assertNotEquals(hash("address", same), hash("card", same));
+    }
+
+    @Test
+    public void dehydrateReplacesThePartsWithTheirHashes() {
+        upserting(3);
+        Document order = order();
+
+        assertTrue(store.dehydrate(order));
+
+        assertEquals(hash("customer", customer("A")), order.get("customer"));
+        for (String part : OrderSnapshotStore.PARTS) {
+            assertInstanceOf(String.class, order.get(part));
+        }
+        assertEquals(21.0, order.get("total"));
+        assertFalse(store.dehydrate(order));
+    }
+
+    @Test
+    public void newPartsAreUpsertedInOneBulkWrite() {
+        upserting(2);
+
+        store.dehydrate(order());
+
+        verify(snapshots, times(1)).bulkWrite(argThat(upserts -> upserts.size() == 3), any(BulkWriteOptions.class));
+        assertEquals(2.0, writes("stored"));
+        assertEquals(1.0, writes("reused"));
+    }
+
+    @Test
+    public void cachedPartsAreNotWrittenAgain() {
+        upserting(3);
+        store.dehydrate(order());
+        Document repeat = order();
+        repeat.put("card", new Document("_id", "k2").append("longNum", "5678"));
+        upserting(1);
+
+        store.dehydrate(repeat);
+
+        verify(snapshots, times(1)).bulkWrite(argThat(upserts -> upserts.size() == 1), any(BulkWriteOptions.class));
+        assertEquals(4.0, writes("stored"));
+        assertEquals(2.0, writes("reused"));
+    }
+
+    @Test
+    public void hydrateRestoresTheSavedParts() {
+        upserting(3);
+        Document order = order();
+        store.dehydrate(order);
+
+        assertTrue(store.hydrate(order));
+
+        assertEquals(order(), order);
+        verify(snapshots, never()).find(any(Bson.class));
+    }
+
+    @Test
+    public void everyReadGetsItsOwnCopy() {
+        stored(customer("A"));
+        String hash = hash("customer", customer("A"));
+        Document first = new Document("customer", hash);
+        Document second = new Document("customer", hash);
+
+        store.hydrate(first);
+        first.get("customer", Document.class).put("firstName", "changed");
+        store.hydrate(second);
+
+        assertEquals(customer("A"), second.get("customer"));
+        verify(snapshots, times(1)).find(any(Bson.class));
+    }
+
+    @Test
+    public void missingSnapshotFailsTheRead() {
+        stored(null);
+        Document order = new Document("customer", "0".repeat(64));
+
+        assertThrows(DataRetrievalFailureException.class, () -> store.hydrate(order));
+    }
+
+    @Test
+    public void hashesAreStableAcrossEncodings() {
+        Document part = customer("A");
+        RawBsonDocument encoded = new RawBsonDocument(part,
+                MongoClientSettings.getDefaultCodecRegistry().get(Document.class));
+
+        assertEquals(OrderSnapshotStore.hash("customer", encoded), hash("customer", part));
+        assertEquals(Arrays.asList("_id", "firstName", "lastName"), new ArrayList<>(encoded.keySet()));
+    }
+}
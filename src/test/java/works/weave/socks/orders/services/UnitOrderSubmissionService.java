@@ -0,0 +1,209 @@
+package works.weave.socks.orders.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import works.weave.socks.orders.controllers.OrdersController.OrderQueueFullException;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.resources.NewOrderResource;
+import works.weave.socks.orders.resources.OrderStatusResource;
+import works.weave.socks.orders.values.OrderStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UnitOrderSubmissionService {
+    private final OrderPipelineService orderPipelineService = mock(OrderPipelineService.class);
+
+    private final OrderService orderService = mock(OrderService.class);
+
+    // Tasks handed to the worker pool, run when a test says so
+    private final List<Runnable> queued = new ArrayList<>();
+
+    private final Executor workers = queued::add;
+
+    private final OrderSubmissionService service = new OrderSubmissionService();
+
+    private final NewOrderResource item = new NewOrderResource();
+
+    @BeforeEach
+    public void setUp() {
+        when(orderService.saveOrder(any(CustomerOrder.class))).thenAnswer(invocation -> {
+            CustomerOrder order = invocation.getArgument(0);
+            order.setId("o1");
+            return order;
+        });
+        when(orderService.claimPending(eq("o1"), any(Date.class))).thenReturn(true);
+        ReflectionTestUtils.setField(service, "orderPipelineService", orderPipelineService);
+        ReflectionTestUtils.setField(service, "orderService", orderService);
+        ReflectionTestUtils.setField(service, "orderWorkerExecutor", workers);
+        ReflectionTestUtils.setField(service, "taskExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(service, "staleAfter", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(service, "statusPollInterval", Duration.ofMillis(10));
+    }
+
+    private static CustomerOrder order(String id, OrderStatus status) {
+        CustomerOrder order = new CustomerOrder();
+        order.setId(id);
+        order.setStatus(status);
+        return order;
+    }
+
+    private void stored(OrderStatus... statuses) {
+        var stubbing = when(orderService.findById("o1")).thenReturn(Optional.of(order("o1", statuses[0])));
+        for (int i = 1; i < statuses.length; i++) {
+            stubbing = stubbing.thenReturn(Optional.of(order("o1", statuses[i])));
+        }
+    }
+
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<>(queued);
+        queued.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private static OrderStatus status(CompletableFuture<Optional<OrderStatusResource>> status) {
+        return status.join().orElseThrow().getStatus();
+    }
+
+    @Test
+    public void submitStoresThePendingOrderAndQueuesIt() {
+        when(orderPipelineService.process(item, "o1"))
+                .thenReturn(CompletableFuture.completedFuture(order("o1", OrderStatus.SHIPPED)));
+
+        CustomerOrder pending = service.submit(item);
+
+        assertEquals(OrderStatus.PENDING, pending.getStatus());
+        assertSame(item, pending.getSubmission());
+        verifyNoInteractions(orderPipelineService);
+        runQueued();
+        verify(orderPipelineService).process(item, "o1");
+    }
+
+    @Test
+    public void submitWhenTheQueueIsFullDeletesTheOrder() {
+        ReflectionTestUtils.setField(service, "orderWorkerExecutor", (Executor) task -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        assertThrows(OrderQueueFullException.class, () -> service.submit(item));
+
+        verify(orderService).deleteOrder("o1");
+        // Nothing is left in flight: a status wait goes to the database
+        stored(OrderStatus.PENDING);
+        service.status("o1", 0).join();
+        verify(orderService).findById("o1");
+    }
+
+    @Test
+    public void orderTakenOverBeforeItStartsIsNotProcessedHere() {
+        when(orderService.claimPending(eq("o1"), any(Date.class))).thenReturn(false);
+
+        service.submit(item);
+        runQueued();
+
+        verifyNoInteractions(orderPipelineService);
+    }
+
+    @Test
+    public void failedProcessingMarksTheOrderFailed() {
+        when(orderPipelineService.process(item, "o1"))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("payment declined")));
+
+        service.submit(item);
+        runQueued();
+
+        verify(orderService).updateStatus("o1", OrderStatus.FAILED, "payment declined");
+    }
+
+    @Test
+    public void recoveryFailsStalePaidOrders() {
+        when(orderService.claimStale(any(Date.class)))
+                .thenReturn(Optional.of(order("o1", OrderStatus.PAID)))
+                .thenReturn(Optional.empty());
+
+        service.recoverStale();
+        runQueued();
+
+        verify(orderService).updateStatus(eq("o1"), eq(OrderStatus.FAILED), anyString());
+        verifyNoInteractions(orderPipelineService);
+    }
+
+    @Test
+    public void recoveryResumesStalePendingOrders() {
+        CustomerOrder stale = order("o2", OrderStatus.PENDING);
+        stale.setSubmission(item);
+        when(orderService.claimStale(any(Date.class))).thenReturn(Optional.of(stale)).thenReturn(Optional.empty());
+        when(orderPipelineService.process(item, "o2"))
+                .thenReturn(CompletableFuture.completedFuture(order("o2", OrderStatus.SHIPPED)));
+
+        service.recoverStale();
+        runQueued();
+
+        verify(orderPipelineService).process(item, "o2");
+        verify(orderService, never()).updateStatus(anyString(), any(), any());
+    }
+
+    @Test
+    public void recoveryClaimsOnlyOrdersOlderThanTheLease() {
+        when(orderService.claimStale(any(Date.class))).thenReturn(Optional.empty());
+        long before = System.currentTimeMillis();
+
+        service.recoverStale();
+
+        verify(orderService).claimStale(argThat(cutoff ->
+                cutoff.getTime() <= before - Duration.ofMinutes(10).toMillis() + 1000
+                        && cutoff.getTime() >= before - Duration.ofMinutes(10).toMillis()));
+    }
+
+    @Test
+    public void statusWithoutWaitReadsTheDatabase() {
+        stored(OrderStatus.PENDING);
+
+        assertEquals(OrderStatus.PENDING, status(service.status("o1", 0)));
+    }
+
+    @Test
+    public void statusWaitEndsWhenTheLocalOrderFinishes() {
+        CompletableFuture<CustomerOrder> processed = new CompletableFuture<>();
+        when(orderPipelineService.process(item, "o1")).thenReturn(processed);
+        service.submit(item);
+        stored(OrderStatus.SHIPPED);
+
+        CompletableFuture<Optional<OrderStatusResource>> status = service.status("o1", 30);
+        assertFalse(status.isDone());
+        processed.complete(order("o1", OrderStatus.SHIPPED));
+        runQueued();
+
+        assertEquals(OrderStatus.SHIPPED, status(status));
+        verify(orderService, times(1)).findById("o1");
+    }
+
+    @Test
+    public void statusWaitPollsTheDatabaseForOrdersProcessedElsewhere() {
+        stored(OrderStatus.PENDING, OrderStatus.PAID, OrderStatus.SHIPPED);
+
+        assertEquals(OrderStatus.SHIPPED, status(service.status("o1", 30)));
+        verify(orderService, times(3)).findById("o1");
+    }
+
+    @Test
+    public void statusWaitReturnsTheCurrentStatusWhenItRunsOut() {
+        stored(OrderStatus.PENDING);
+        ReflectionTestUtils.setField(service, "statusPollInterval", Duration.ofMillis(200));
+
+        assertEquals(OrderStatus.PENDING, status(service.status("o1", 1)));
+    }
+}
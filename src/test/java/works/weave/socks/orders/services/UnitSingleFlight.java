@@ -0,0 +1,106 @@
+package works.weave.socks.orders.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitSingleFlight {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final SingleFlight singleFlight = new SingleFlight("test", registry);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private CompletableFuture<String> call(CompletableFuture<String> result) {
+        calls.incrementAndGet();
+        return result;
+    }
+
+    @Test
+    public void concurrentCallersShareOneCall() {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> call(shared));
+        CompletableFuture<String> second = singleFlight.execute("k", () -> call(new CompletableFuture<>()));
+
+        shared.complete("v");
+
+        assertEquals("v", first.join());
+        assertEquals("v", second.join());
+        assertEquals(1, calls.get());
+        assertEquals(1.0, registry.get("test.collapsed").counter().count());
+        assertEquals(2.0, registry.get("test.requests").counter().count());
+    }
+
+    @Test
+    public void differentKeysDoNotShare() {
+        singleFlight.execute("a", () -> call(new CompletableFuture<>()));
+        singleFlight.execute("b", () -> call(new CompletableFuture<>()));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void callerArrivingAfterCompletionStartsAFreshCall() {
+        singleFlight.execute("k", () -> call(CompletableFuture.completedFuture("old"))).join();
+        CompletableFuture<String> next = singleFlight.execute("k", () -> call(CompletableFuture.completedFuture("new")));
+        assertEquals("new", next.join());
+        assertEquals(2, calls.get());
+        assertEquals(0.0, registry.get("test.inflight").gauge().value());
+    }
+
+    @Test
+    public void failuresAreSharedAndNotCached() {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> call(shared));
+        CompletableFuture<String> second = singleFlight.execute("k", () -> call(new CompletableFuture<>()));
+        shared.completeExceptionally(new IllegalStateException("down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        singleFlight.execute("k", () -> call(new CompletableFuture<>()));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void supplierThrowingFailsTheCaller() {
+        CompletableFuture<String> result = singleFlight.execute("k", () -> {
+            throw new IllegalArgumentException("bad");
+        });
+        assertTrue(result.isCompletedExceptionally());
+    }
+
+    @Test
+    public void oneCallerGivingUpLeavesTheSharedCallRunning() {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> call(shared));
+        CompletableFuture<String> second = singleFlight.execute("k", () -> call(new CompletableFuture<>()));
+
+        first.cancel(true);
+
+        assertFalse(shared.isDone());
+        shared.complete("v");
+        assertEquals("v", second.join());
+    }
+
+    @Test
+    public void sharedCallIsCancelledOnceEveryCallerGaveUp() {
+        CompletableFuture<String> shared = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("k", () -> call(shared));
+        CompletableFuture<String> second = singleFlight.execute("k", () -> call(new CompletableFuture<>()));
+
+        first.cancel(true);
+        second.completeExceptionally(new TimeoutException());
+
+        assertTrue(shared.isCancelled());
+
+        CompletableFuture<String> fresh = new CompletableFuture<>();
+        CompletableFuture<String> third = singleFlight.execute("k", () -> call(fresh));
+        fresh.complete("again");
+        assertEquals("again", third.join());
+        assertEquals(2, calls.get());
+    }
+}
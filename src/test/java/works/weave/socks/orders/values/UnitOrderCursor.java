@@ -0,0 +1,50 @@
+package works.weave.socks.orders.values;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitOrderCursor {
+    private static String token(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void decodesWhatItEncoded() {
+        Date date = new Date(1700000000123L);
+        String id = new ObjectId().toHexString();
+
+        OrderCursor cursor = OrderCursor.decode(new OrderCursor(date, id).encode());
+
+        assertEquals(date, cursor.getDate());
+        assertEquals(id, cursor.getId());
+    }
+
+    @Test
+    public void tokenIsUrlSafe() {
+        String token = new OrderCursor(new Date(), new ObjectId().toHexString()).encode();
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+    }
+
+    @Test
+    public void rejectsIdsThatAreNotObjectIds() {
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode(token("1700000000123:abc")));
+        assertThrows(IllegalArgumentException.class,
+                () -> OrderCursor.decode(token("1700000000123:" + new ObjectId().toHexString() + "0")));
+    }
+
+    @Test
+    public void rejectsMalformedTokens() {
+        String id = new ObjectId().toHexString();
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode(token("no separator")));
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode(token(":" + id)));
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode(token("1700000000123:")));
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode(token("yesterday:" + id)));
+    }
+}
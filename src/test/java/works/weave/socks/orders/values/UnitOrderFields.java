@@ -0,0 +1,117 @@
+package works.weave.socks.orders.values;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Query;
+import works.weave.socks.orders.entities.Card;
+import works.weave.socks.orders.entities.CustomerOrder;
+import works.weave.socks.orders.entities.Item;
+import works.weave.socks.orders.resources.OrderHistoryResource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UnitOrderFields {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ObjectWriter filtering = OrderFields.filtering(mapper).writer();
+
+    private static CustomerOrder order(String id) {
+        return new CustomerOrder(id, "c1", null, null, new Card("k1", "1234", "1/30", "123"),
+                Collections.singletonList(new Item("i1", "sock", 2, 10.5f)), null, new Date(1700000000000L), 21f);
+    }
+
+    private static List<String> names(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        Iterator<String> iterator = node.fieldNames();
+        iterator.forEachRemaining(names::add);
+        return names;
+    }
+
+    @Test
+    public void writesOnlyTheSelectedFields() throws Exception {
+        OrderFields fields = OrderFields.parse("id,total");
+
+        JsonNode node = mapper.readTree(fields.writer(filtering).writeValueAsBytes(order("o1")));
+
+        assertEquals(Arrays.asList("id", "total"), names(node));
+        assertEquals("o1", node.get("id").asText());
+        assertEquals(21.0, node.get("total").asDouble());
+    }
+
+    @Test
+    public void leftOutFieldsAreNotSerialized() throws Exception {
+        CustomerOrder order = new CustomerOrder() {
+            @Override
+            public Card getCard() {
+                throw new AssertionError("card was not selected");
+            }
+        };
+        order.setId("o1");
+
+        JsonNode node = mapper.readTree(OrderFields.parse("id").writer(filtering).writeValueAsBytes(order));
+
+        assertEquals(Collections.singletonList("id"), names(node));
+    }
+
+    @Test
+    public void filtersOrdersInsideAPage() throws Exception {
+        OrderHistoryResource<CustomerOrder> page = new OrderHistoryResource<>(
+                Arrays.asList(order("o1"), order("o2")), "cursor");
+
+        JsonNode node = mapper.readTree(OrderFields.parse("id").writer(filtering).writeValueAsBytes(page));
+
+        assertEquals("cursor", node.get("next").asText());
+        assertEquals(2, node.get("orders").size());
+        for (JsonNode order : node.get("orders")) {
+            assertEquals(Collections.singletonList("id"), names(order));
+        }
+    }
+
+    @Test
+    public void mapperItWasCopiedFromStillWritesWholeOrders() throws Exception {
+        OrderFields.filtering(mapper);
+
+        JsonNode node = mapper.readTree(mapper.writeValueAsBytes(order("o1")));
+
+        assertTrue(node.has("card"));
+        assertTrue(node.has("items"));
+    }
+
+    @Test
+    public void blankMeansWholeOrders() {
+        assertNull(OrderFields.parse(null));
+        assertNull(OrderFields.parse(" "));
+    }
+
+    @Test
+    public void namesAreTrimmedAndDeduplicated() {
+        assertEquals("id,date", OrderFields.parse(" id, date,id").toString());
+    }
+
+    @Test
+    public void unknownNameIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> OrderFields.parse("id,submission"));
+        assertTrue(e.getMessage().startsWith("Unknown order field: submission"));
+    }
+
+    @Test
+    public void projectsTheSelectedFields() {
+        Query query = new Query();
+
+        OrderFields.parse("date,total").project(query.fields());
+
+        assertEquals(1, query.getFieldsObject().get("date"));
+        assertEquals(1, query.getFieldsObject().get("total"));
+        assertEquals(2, query.getFieldsObject().size());
+    }
+}